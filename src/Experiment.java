@@ -1,5 +1,7 @@
 import dnr.DNR;
+import dnr.JointConfusionCube;
 import masobjeval.MASObjectivesEvaluator;
+import masobjeval.OASurrogate;
 import simulation.*;
 
 import java.io.File;
@@ -39,24 +41,37 @@ public class Experiment {
         double  vehiclesRate = 2;
 //        boolean [] traintestsplits = {false, true};
         boolean [] traintestsplits = {false};
+        String eval_mode = "split"; // "split", "repeated", "kfold"; //how the traces are split with traintestsplit, each fold is logged in a separate row, with its number in the fold column
+        int eval_folds = 5; //k of the kfold evaluation
+        int eval_repeats = 1; //number of splits of the repeated evaluation, or of partitions of the kfold evaluation
 //        boolean independent_set_test = true;
         boolean independent_set_test = false;
         int trials = 100;
 //        int trials = 1;
-        String [] rev_types = {"weakening", "strengthening", "alteration"};
+        String [] rev_types = {"weakening", "strengthening", "alteration"}; // also "localsearch" and "evolutionary" (the synthesis step then gives the neighbours of the norms)
 //        String [] rev_types = {"alteration"};
 //        int [] nrs_norms = {1, 2};
         int [] nrs_norms = {1};
 //        int [] nrs_norms = {2};
-        String dnr_metric = "accuracy"; // "mlacc", "accuracy"; //note mlacc works only if nr_norms is 2
+        String dnr_metric = "accuracy"; // "mlacc", "accuracy", "precision", "recall", "f1", "mcc", "balanced_accuracy", "kappa";
         int nr_repeated_revision = 4; //4
+        boolean stop_at_fixpoint = true; //when a (deterministic) revision gives back the same configuration, the next revisions are not run and the configuration is evaluated again
         boolean log_synth = false;
+        boolean dnr_dedup = false; //keeps only one candidate norm per violation signature after the synthesis step
+        int dnr_parallelism = 1; //number of threads scoring the configurations in the selection step
+        String dnr_selection = "all"; // "all", "bounded", "racing", "sequential", "adaptive", "pareto"; //note with bounded the selection step returns only the best dnr_topk configurations, pareto the non-dominated ones, sequential and adaptive require dnr_samples>0
+        int dnr_topk = 1;
+        long dnr_space_budget = 0; //max number of candidate norms per norm revised (0 for no budget), to which the space parameters of the norms are tuned
+        long dnr_time_budget = 0; //ms available for each revision (0 for no budget), in which case DNR returns the best configuration found in time
+        int dnr_bootstrap = 0; //number of Poisson bootstrap resamples (0 for none) of the quality of the evaluated configurations, whose 95% confidence interval is logged after each quality (only with accuracy and mlacc)
+        int surrogate_screen = 0; //number of synthesised configurations to report as worth simulating (0 for none), the ones with the highest OA estimated by a surrogate trained on the configurations simulated in the previous trials
 
         for(int nr_norms: nrs_norms) {
             Random r = new Random();
             String filename = "results_" + nr_norms + "norms_";
             File resultsfile = new File(folder_name + System.getProperty("file.separator") + filename + ".metrics.csv");
-            initCSV(resultsfile, nr_norms, logTwoLabelConfMatr);
+            initCSV(resultsfile, nr_norms, logTwoLabelConfMatr, dnr_bootstrap>0);
+            OASurrogate surrogate = new OASurrogate(nr_norms>1 ? List.of(idMaxSpeedNorm, idMinDistNorm) : List.of(idMaxSpeedNorm));
             for (int trial = 1; trial <= trials; trial++) {
                 System.out.println("Trial "+ trial);
                 r.setSeed((long) trial * 12345789);
@@ -106,11 +121,20 @@ public class Experiment {
                 /** Evaluation of the traces via the MAS objectives evaluator **/
                 System.out.println("Evaluating the MAS objectives ...");
                 ArrayList<Trace> labeledTraces = maoe.labelTraces(simTraces);
+                surrogate.addSample(systemConfig, labeledTraces, maoe);
 
                 /** Data-Driven Norm Revision **/
                 System.out.println("Creating and running Data-Driven Norm Revision ...");
                 //create DNR
                 DNR dnr = new DNR(dnr_samples, dnr_metric, idMaxSpeedNorm, idMinDistNorm, r);
+                dnr.setDedup(dnr_dedup);
+                dnr.setParallelism(dnr_parallelism);
+                dnr.setSelectionMode(dnr_selection);
+                dnr.setSelectionTopK(dnr_topk);
+                dnr.setSpaceBudget(dnr_space_budget, 0);
+                dnr.setRevisionTimeBudget(dnr_time_budget);
+                dnr.setBootstrap(dnr_bootstrap, 0.95);
+                dnr.setEvaluation(eval_mode, eval_folds, eval_repeats);
                 //Create results file
                 /** For all different types of experiments**/
                 for (boolean traintestsplit : traintestsplits) {
@@ -123,8 +147,14 @@ public class Experiment {
                         /**First I log all info about the synthesised sets (RQ1) **/
                         String exp_type = "synth";
                         LinkedHashMap<String, ArrayList<DNFNorm>> rn = dnr.synthesis(rev_type, systemConfig, labeledTraces);
+                        dnr.setKeepAllConfigurations(true); //the analysis of the synthesised configurations and the random baseline need all of them
                         LinkedHashMap<Configuration, Double> rneval = dnr.selection(systemConfig, rn, labeledTraces);
+                        dnr.setKeepAllConfigurations(false); //then only the best one is needed
                         System.out.println("Number of new configurations synthesised " + rneval.size());
+                        if(surrogate_screen>0 && surrogate.getNrSamples()>=OASurrogate.MIN_SAMPLES) {
+                            LinkedHashMap<Configuration, Double> screened = surrogate.screen(rneval.keySet(), surrogate_screen);
+                            System.out.println("Configurations worth simulating according to the " + surrogate + ": " + screened);
+                        }
 
 
                         /** Then I analyze the selected configurations (RQ2) **/
@@ -164,13 +194,25 @@ public class Experiment {
                         metric = dnr_metric;
                         System.out.println("... metric "+metric);
                         Configuration tempSysConfig = systemConfig;
+                        boolean fixpoint = false;
                         for (int i = 0; i < nr_repeated_revision; i++) { //checking also what happens after 4 repeated revisions
-                            if(i>0) {//I synthesise again
-                                rn = dnr.synthesis(rev_type, tempSysConfig, labeledTraces);
-                                rneval = dnr.selection(tempSysConfig, rn, labeledTraces);
+                            Configuration newConfig;
+                            if(fixpoint) { //revising the configuration again would give the same configuration
+                                newConfig = tempSysConfig;
+                            } else if(DNR.isSearchStrategy(rev_type) || dnr_time_budget>0) { //the revised configuration is searched directly, or within the budget
+                                newConfig = dnr.runDNR(tempSysConfig, labeledTraces, rev_type);
+                            } else {
+                                if(i>0) {//I synthesise again
+                                    rn = dnr.synthesis(rev_type, tempSysConfig, labeledTraces);
+                                    rneval = dnr.selection(tempSysConfig, rn, labeledTraces);
+                                }
+                                newConfig = dnr.getBestConfigFromSelStep(rneval);
                             }
-                            Configuration newConfig = dnr.getBestConfigFromSelStep(rneval);
                             System.out.println("DNR selection: " + newConfig);
+                            if(stop_at_fixpoint && !fixpoint && newConfig!=null && newConfig.equals(tempSysConfig) && dnr.isDeterministic(rev_type)) {
+                                fixpoint = true;
+                                System.out.println("Fixpoint reached at revision " + i + ", the next revisions are not run");
+                            }
                             LinkedHashMap<String, ArrayList<String>> eval = dnr.evalConfigurations(nr_norms, tempSysConfig, newConfig, labeledTraces, traintestsplit, independent_set_test, independentLabeledTraces, logTwoLabelConfMatr);
                             writeMetricsData(resultsfile, exp_type + ";" + metric + ";" + i + ";" + traintestsplit + ";" + independent_set_test + ";" + rev_type + ";" + trial + ";", eval, logTwoLabelConfMatr);
                             tempSysConfig = newConfig;
@@ -182,13 +224,13 @@ public class Experiment {
 
     }
 
-    static void initCSV(File filename, int nr_norms, boolean logTwoLabelConfMatr) {
+    static void initCSV(File filename, int nr_norms, boolean logTwoLabelConfMatr, boolean logConfidenceIntervals) {
         FileWriter csvWriter = null;
         try {
             csvWriter = new FileWriter(filename, false);
             int info_size = 5; //5 because it is: quality val + the 4 val of the confusion matrix
 
-            String header = "exp_type;metric;revision_nr;traintestsplit;independent_test;revtype;trial;";
+            String header = "exp_type;metric;revision_nr;traintestsplit;independent_test;revtype;trial;fold;";
             for (int j = 0; j < 4; j++) { //4 times: init norm on train, init on test, new on train, new on test
                 String suffix = "";
                 switch (j) {
@@ -206,8 +248,11 @@ public class Experiment {
                         break;
                 }
                 header = header + suffix + "_val;";
+                if (logConfidenceIntervals)
+                    header = header + suffix + "_val_lo;" + suffix + "_val_hi;";
                 if (nr_norms > 1 && logTwoLabelConfMatr) {
-                    header = header + "pfc;ppc1;ppc2;pfw;nfw;npc2;npc1;nfc;";
+                    for (String column : JointConfusionCube.getColumnNames(nr_norms))
+                        header = header + column + ";";
                 } else {
                     for (int n = 0; n < nr_norms; n++) //for each norm
                         header = header + "tp_" + n + ";fp_" + n + ";tn_" + n + ";fn_" + n + ";";
@@ -228,7 +273,7 @@ public class Experiment {
         try {
             FileWriter csvWriter = new FileWriter(resultsfile, true);
             for (Map.Entry<String, ArrayList<String>> metric : logMetr.entrySet()) {
-                csvWriter.append(param+"");
+                csvWriter.append(param+DNR.getFold(metric.getKey())+";");
                 for(int i=0;i<metric.getValue().size();i++) {
                     csvWriter.append(metric.getValue().get(i)+";");
                 }
@@ -0,0 +1,52 @@
+package dnr;
+
+import simulation.Configuration;
+
+public class AnytimeRevision {
+    /**
+     * Class representing the result of a time-budgeted revision: the best configuration found before the deadline,
+     * its quality, an upper bound of the quality of the best configuration that the revision could have found without
+     * deadline, and whether the revision completed (in which case the configuration is the one it would have found)
+     */
+    private final Configuration config;
+    private final double quality;
+    private final double bound;
+    private final boolean complete;
+    private final int scored;
+
+    public AnytimeRevision(Configuration config, double quality, double bound, boolean complete, int scored) {
+        this.config = config;
+        this.quality = quality;
+        this.bound = bound;
+        this.complete = complete;
+        this.scored = scored;
+    }
+
+    public Configuration getConfig() {
+        return config;
+    }
+
+    public double getQuality() {
+        return quality;
+    }
+
+    public double getBound() {
+        return bound;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public int getNrScored() {
+        /**
+         * Number of configurations scored
+         */
+        return scored;
+    }
+
+    @Override
+    public String toString() {
+        return config+" (quality "+quality+", bound "+bound+(complete ? ", complete" : ", deadline expired")+", "+scored+" configurations scored)";
+    }
+}
@@ -0,0 +1,116 @@
+package dnr;
+
+import simulation.Configuration;
+import simulation.DNFNorm;
+
+import java.util.*;
+
+public class CombinationEnumerator extends AbstractList<Configuration> {
+    /**
+     * Class enumerating lazily all the combinations of candidate norms, i.e., the configurations obtained from a
+     * configuration by replacing each norm with one of its candidates.
+     * A combination is identified by a tuple of indexes (one per norm, in the order of the keys of the candidate norms)
+     * or equivalently by its index in the mixed-radix space of the tuples, where the first norm is the most significant
+     * digit. Combinations are thus in the same order in which they were generated recursively, and any range of the
+     * index space can be enumerated independently (e.g., in parallel). Configurations are created only when requested:
+     * a combination can be scored from its tuple (see getSlotNorms and getSlot), without creating its configuration.
+     * Empty candidate norms are discarded, as they would give empty configurations, and so are the candidate norms
+     * equal to a previous candidate of the same norm, as they would give a configuration already enumerated
+     */
+    private final Configuration base;
+    private final ArrayList<String> keys = new ArrayList<>();
+    private final ArrayList<ArrayList<DNFNorm>> lists = new ArrayList<>();
+    private final long nrCombinations;
+    /* for every norm of the configurations (in their order), the norms it can take and its position in the tuples (-1
+    if it is not replaced) */
+    private final ArrayList<List<DNFNorm>> slotNorms = new ArrayList<>();
+    private final ArrayList<Integer> slotDigits = new ArrayList<>();
+
+    public CombinationEnumerator(Configuration base, LinkedHashMap<String, ArrayList<DNFNorm>> candidateNorms) {
+        this.base = base;
+        long nr_combinations = 1;
+        for(Map.Entry<String, ArrayList<DNFNorm>> e : candidateNorms.entrySet()) {
+            LinkedHashMap<String, DNFNorm> distinct = new LinkedHashMap<>();
+            for(DNFNorm n : e.getValue())
+                if(!n.isEmpty())
+                    distinct.putIfAbsent(n.toString(), n); //as for Configuration.equals
+            keys.add(e.getKey());
+            lists.add(new ArrayList<>(distinct.values()));
+            nr_combinations = nr_combinations > Long.MAX_VALUE/Math.max(1, distinct.size()) ? Long.MAX_VALUE : nr_combinations*distinct.size();
+        }
+        for(Map.Entry<String, DNFNorm> e : base.getMap().entrySet()) //norms that are not replaced
+            if(!candidateNorms.containsKey(e.getKey()) && e.getValue().isEmpty())
+                nr_combinations = 0;
+        this.nrCombinations = nr_combinations;
+        LinkedHashMap<String, DNFNorm> map = new LinkedHashMap<>(base.getMap()); //same order as the configurations
+        for(String key : keys)
+            map.put(key, null);
+        for(Map.Entry<String, DNFNorm> e : map.entrySet()) {
+            int digit = keys.indexOf(e.getKey());
+            slotNorms.add(digit<0 ? List.of(e.getValue()) : lists.get(digit));
+            slotDigits.add(digit);
+        }
+    }
+
+    public long getNrCombinations() {
+        return nrCombinations;
+    }
+
+    @Override
+    public int size() {
+        /**
+         * Number of combinations as a list. Fails in the (unrealistic) case of more than Integer.MAX_VALUE
+         * combinations, which can only be enumerated by their long index (see getNrCombinations)
+         */
+        if(nrCombinations>Integer.MAX_VALUE)
+            throw new IllegalStateException("Too many combinations ("+nrCombinations+") to be listed");
+        return (int) nrCombinations;
+    }
+
+    public List<List<DNFNorm>> getSlotNorms() {
+        /**
+         * Returns, for every norm of the configurations (in their order), the norms it can take: its distinct
+         * non-empty candidates, or only the norm of the base configuration if the norm is not replaced
+         */
+        return slotNorms;
+    }
+
+    public int getSlot(int[] tuple, int slot) {
+        /**
+         * Returns the position in getSlotNorms().get(slot) of the norm taken by the slot-th norm in the combination
+         * with tuple tuple
+         */
+        int digit = slotDigits.get(slot);
+        return digit<0 ? 0 : tuple[digit];
+    }
+
+    public int[] getTuple(long index) {
+        /**
+         * Returns the indexes of the candidate norms (in the lists of distinct non-empty candidates) of combination index
+         */
+        int[] tuple = new int[lists.size()];
+        for(int i=lists.size()-1; i>=0; i--) {
+            tuple[i] = (int) (index % lists.get(i).size());
+            index = index / lists.get(i).size();
+        }
+        return tuple;
+    }
+
+    public Configuration get(long index) {
+        /**
+         * Creates the configuration of combination index
+         */
+        int[] tuple = getTuple(index);
+        LinkedHashMap<String, DNFNorm> map = new LinkedHashMap<>(base.getMap());
+        for(int i=0; i<keys.size(); i++)
+            map.put(keys.get(i), lists.get(i).get(tuple[i]));
+        return new Configuration(map, base.getNormsTypes());
+    }
+
+    @Override
+    public Configuration get(int index) {
+        if(index<0 || index>=size())
+            throw new IndexOutOfBoundsException("Combination "+index+" out of "+nrCombinations);
+        return get((long) index);
+    }
+}
@@ -0,0 +1,166 @@
+package dnr;
+
+import java.util.*;
+
+public class ConfusionMatrix {
+    /**
+     * Class representing the confusion matrix of a norm w.r.t. a dataset of labeled traces, where the norm classifies
+     * as positive the traces that do not violate it: TP (positive traces not violating the norm), FP (negative traces
+     * not violating the norm), TN (negative traces violating the norm) and FN (positive traces violating the norm).
+     * All the metrics supported by DNR are derived from the matrix, so it is computed only once per norm
+     */
+    public static final String[] METRICS = {"accuracy", "precision", "recall", "f1", "mcc", "balanced_accuracy", "kappa"};
+    private static final Set<String> METRICS_SET = new HashSet<>(Arrays.asList(METRICS));
+
+    private final int tp;
+    private final int fp;
+    private final int tn;
+    private final int fn;
+
+    public ConfusionMatrix(int tp, int fp, int tn, int fn) {
+        this.tp = tp;
+        this.fp = fp;
+        this.tn = tn;
+        this.fn = fn;
+    }
+
+    public static ConfusionMatrix fromViolations(EvaluationIndex index, BitSet viol) {
+        /**
+         * Creates the confusion matrix of the norm with violation vector viol w.r.t. the traces of index
+         */
+        List<BitSet> viols = List.of(viol);
+        int tp = index.countTraces(true, viols, new boolean[]{false});
+        int fp = index.countTraces(false, viols, new boolean[]{false});
+        int tn = index.countTraces(false, viols, new boolean[]{true});
+        int fn = index.countTraces(true, viols, new boolean[]{true});
+        return new ConfusionMatrix(tp, fp, tn, fn);
+    }
+
+    public static ConfusionMatrix fromViolations(EvaluationIndex index, BitSet viol, BitSet mask) {
+        /**
+         * Creates the confusion matrix of the norm with violation vector viol w.r.t. the traces of index selected by
+         * mask (e.g., a fold of the traces, see TraceFolds), counting the traces with popcounts of the masked vectors
+         */
+        BitSet positives = (BitSet) mask.clone();
+        positives.and(index.getLabels());
+        BitSet negatives = (BitSet) mask.clone();
+        negatives.andNot(index.getLabels());
+        int nr_positives = positives.cardinality();
+        int nr_negatives = negatives.cardinality();
+        positives.and(viol);
+        negatives.and(viol);
+        int fn = positives.cardinality();
+        int tn = negatives.cardinality();
+        return new ConfusionMatrix(nr_positives-fn, nr_negatives-tn, tn, fn);
+    }
+
+    public int getTP() {
+        return tp;
+    }
+
+    public int getFP() {
+        return fp;
+    }
+
+    public int getTN() {
+        return tn;
+    }
+
+    public int getFN() {
+        return fn;
+    }
+
+    public int size() {
+        return tp+fp+tn+fn;
+    }
+
+    public ArrayList<Integer> toList() {
+        /**
+         * Returns the list (TP, FP, TN, FN)
+         */
+        return new ArrayList<>(List.of(tp, fp, tn, fn));
+    }
+
+    public double getAccuracy() {
+        double correct_traces = tp+tn;
+        return correct_traces/size();
+    }
+
+    public double getPrecision() {
+        return tp+fp > 0 ? (double) tp/(tp+fp) : 0.0;
+    }
+
+    public double getRecall() {
+        return tp+fn > 0 ? (double) tp/(tp+fn) : 0.0;
+    }
+
+    public double getSpecificity() {
+        return tn+fp > 0 ? (double) tn/(tn+fp) : 0.0;
+    }
+
+    public double getF1() {
+        return 2*tp+fp+fn > 0 ? (2.0*tp)/(2*tp+fp+fn) : 0.0;
+    }
+
+    public double getMCC() {
+        /**
+         * Matthews correlation coefficient (0 when a row or a column of the matrix is empty)
+         */
+        double den = Math.sqrt((double) (tp+fp)*(tp+fn)*(tn+fp)*(tn+fn));
+        return den > 0 ? ((double) tp*tn-(double) fp*fn)/den : 0.0;
+    }
+
+    public double getBalancedAccuracy() {
+        return (getRecall()+getSpecificity())/2.0;
+    }
+
+    public double getKappa() {
+        /**
+         * Cohen's kappa (1 in case of perfect agreement and chance agreement equal to 1, 0 otherwise in that case)
+         */
+        double n = size();
+        double po = (tp+tn)/n;
+        double pe = ((double) (tp+fp)*(tp+fn)+(double) (fn+tn)*(fp+tn))/(n*n);
+        if(pe==1.0)
+            return po==1.0 ? 1.0 : 0.0;
+        return (po-pe)/(1.0-pe);
+    }
+
+    public static boolean isMetric(String metric) {
+        /**
+         * Returns true if metric is one of METRICS
+         */
+        return METRICS_SET.contains(metric);
+    }
+
+    public double getMetric(String metric) {
+        /**
+         * Returns the value of the metric metric (one of METRICS), or -1 if the matrix is empty or the metric unknown
+         */
+        if(size()==0)
+            return -1.0;
+        switch(metric) {
+            case "accuracy":
+                return getAccuracy();
+            case "precision":
+                return getPrecision();
+            case "recall":
+                return getRecall();
+            case "f1":
+                return getF1();
+            case "mcc":
+                return getMCC();
+            case "balanced_accuracy":
+                return getBalancedAccuracy();
+            case "kappa":
+                return getKappa();
+        }
+        System.out.println("WARNING: metric not found.");
+        return -1.0;
+    }
+
+    @Override
+    public String toString() {
+        return "TP="+tp+", FP="+fp+", TN="+tn+", FN="+fn;
+    }
+}
@@ -4,6 +4,10 @@ import simulation.*;
 
 import java.lang.reflect.Constructor;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Collectors;
 
 public class DNR {
@@ -17,6 +21,77 @@ public class DNR {
     int samples;
     String idMaxSpeedNorm;
     String idMinDistNorm;
+    boolean dedup = false;
+    /* counters of the (cond, proh, dead) combinations pruned before creating the norm, and of the created ones */
+    long prunedCombinations = 0;
+    long instantiatedCombinations = 0;
+    /* cache of the states, propositions, candidate norms, norms quality and configurations quality computed w.r.t. the datasets of traces */
+    RevisionCache cache = new RevisionCache();
+    /* counters of the configurations scored and of the ones whose quality was found in the cache */
+    final AtomicLong scoredConfigurations = new AtomicLong();
+    final AtomicLong reusedConfigurations = new AtomicLong();
+    /* number of threads used to score the configurations in the selection step */
+    int parallelism = 1;
+    static final int SCORING_TASKS_PER_THREAD = 8;
+    /* how the configurations are selected ("all", "bounded", "racing", "sequential", "adaptive" or "pareto"), and how many of them the bounded selection returns */
+    String selectionMode = "all";
+    int selectionTopK = 1;
+    /* whether the selection step returns all the configurations scored instead of the best selectionTopK */
+    boolean keepAllConfigurations = false;
+    /* stopping rule and time budget (in ms, 0 for no budget) of the sequential Monte Carlo selection */
+    double sequentialEpsilon = 0.01;
+    double sequentialDelta = 0.05;
+    long selectionTimeBudget = 0;
+    /* batch size, elite fraction, smoothing of the weights and exploration floor of the adaptive Monte Carlo selection */
+    int adaptiveBatchSize = 50;
+    double adaptiveElite = 0.1;
+    double adaptiveSmoothing = 0.7;
+    double adaptiveExploration = 0.1;
+    /* objectives of the pareto selection, all maximized (restrictiveness, CO2 and travel time are negated) */
+    static final String[] PARETO_OBJECTIVES = {"quality", "restrictiveness", "co2", "traveltime"};
+    /* size of the first subsample of traces and confidence parameter of the racing selection */
+    int racingInitialSample = 32;
+    double racingDelta = 0.05;
+    /* margin for the rounding errors when comparing a quality bound to the quality of a configuration */
+    static final double BOUND_TOLERANCE = 1e-9;
+    static final int BOUND_BLOCK_SIZE = 64; //traces scored between two checks of the bound of the multi-label accuracy
+    /* iterations, iterations without improvement, tabu list size and restarts of the local search revision */
+    int localSearchIterations = 100;
+    int localSearchPatience = 20;
+    int localSearchTabuSize = 20;
+    int localSearchRestarts = 2;
+    /* number of random moves applied to the best configuration found when the local search restarts */
+    static final int LOCAL_SEARCH_KICK = 3;
+    /* budgets (0 for no budget) of the candidate norms of each norm revised, as a number and as ms to score them, to which the space parameters are tuned */
+    long spaceCandidateBudget = 0;
+    long spaceTimeBudget = 0;
+    static final int MAX_SPACE_PARAM = 64;
+    /* time budget (in ms, 0 for no budget) of runDNR, and deadline (in ms since the epoch, 0 for none) of the revision in progress */
+    long revisionTimeBudget = 0;
+    long revisionDeadline = 0;
+    /* maximum quality of a configuration w.r.t. any of the metrics, the bound when nothing better is known */
+    static final double MAX_QUALITY = 1.0;
+    /* population size, generations, elite size, mutation probability and seed (-1 to use r) of the evolutionary revision */
+    int evolutionaryPopulation = 30;
+    int evolutionaryGenerations = 20;
+    int evolutionaryElite = 2;
+    double evolutionaryMutationRate = 0.3;
+    long evolutionarySeed = -1;
+    /* resamples (0 for none), confidence level and seed of the Poisson bootstrap of the quality of the evaluated configurations,
+     * and the weights of the resamples drawn for every dataset size (e.g., of the train and of the test traces) */
+    int bootstrapResamples = 0;
+    double bootstrapConfidence = 0.95;
+    long bootstrapSeed = 0;
+    HashMap<Integer, PoissonBootstrap> bootstraps = new HashMap<>();
+    /* how the configurations are evaluated with train/test split ("split", "kfold" or "repeated"), number of folds and of repetitions,
+     * and the generator of the folds, seeded separately so that the evaluation does not consume r */
+    String evaluationMode = "split";
+    int evaluationFolds = 5;
+    int evaluationRepeats = 1;
+    long evaluationSeed = 0;
+    Random evaluationRandom = new Random(evaluationSeed);
+    static final double EVALUATION_TRAIN_FRACTION = 0.75;
+    public static final String FOLD_SUFFIX = "_fold"; //the results of evalConfigurations for the folds are keyed by metric+FOLD_SUFFIX+fold
 
     public DNR(int samples, String metric, String idMaxSpeedNorm, String idMinDistNorm, Random r) {
         this.idMaxSpeedNorm = idMaxSpeedNorm;
@@ -37,6 +112,10 @@ public class DNR {
          *
          */
         Configuration revisedConf = systemConfig;
+        if(revisionTimeBudget>0)
+            return runAnytimeDNR(systemConfig, labeledTraces, revStrategy, revisionTimeBudget).getConfig();
+        if(isSearchStrategy(revStrategy))
+            return search(revStrategy, systemConfig, labeledTraces);
         /*Synthesis Step */
         LinkedHashMap<String, ArrayList<DNFNorm>> candidateNorms =
                 synthesis(revStrategy, systemConfig, labeledTraces); //traces used for the suggestion, traces used for generating the new simulation.norms, traces used for choosing between different simulation.norms
@@ -46,68 +125,1072 @@ public class DNR {
         return getBestConfigFromSelStep(new_configs_with_quality);
     }
 
+    public AnytimeRevision runAnytimeDNR(Configuration systemConfig, ArrayList<Trace> labeledTraces, String revStrategy, long budget) {
+        /**
+         * Function to execute the data-driven norm revision within budget milliseconds.
+         * Synthesis and selection are interleaved: the norms whose candidates are already cached are revised first,
+         * the candidates of each norm are scored individually (cheaply, w.r.t. the norm they revise) as soon as they
+         * are synthesised, and the configuration made of the best candidates found so far is scored after each norm.
+         * Once all norms are revised, the combinations of candidates are scored by decreasing optimistic bound (the
+         * mean quality of their norms, i.e., their quality or, with mlacc, the mean accuracy of their norms), until no
+         * remaining combination can be better than the best one found. Whenever the deadline expires, the best
+         * configuration found so far (initially systemConfig) is returned, together with an upper bound of the quality
+         * that the revision could have reached. Note that the synthesis of the candidates of a norm is not interrupted.
+         * Search strategies stop at the deadline as well, but without a bound other than the maximum quality
+         */
+        revisionDeadline = System.currentTimeMillis()+budget;
+        try {
+            if(systemConfig==null || systemConfig.isEmpty())
+                return new AnytimeRevision(null, -1.0, -1.0, true, 0);
+            if(isSearchStrategy(revStrategy)) {
+                Configuration c = search(revStrategy, systemConfig, labeledTraces);
+                return new AnytimeRevision(c, getConfigQuality(c, labeledTraces), MAX_QUALITY, !isPastDeadline(), 0);
+            }
+            AnytimeRevision revision = anytimeRevision(systemConfig, labeledTraces, revStrategy);
+            System.out.println("Anytime revision: "+revision);
+            return revision;
+        } finally {
+            revisionDeadline = 0;
+        }
+    }
+
+    boolean isPastDeadline() {
+        return revisionDeadline>0 && System.currentTimeMillis()>=revisionDeadline;
+    }
+
+    AnytimeRevision anytimeRevision(Configuration systemConfig, ArrayList<Trace> traces, String revStrategy) {
+        /**
+         * The interleaved synthesis and selection of runAnytimeDNR
+         */
+        String bound_metric = metric.equals("mlacc") ? "accuracy" : metric;
+        Configuration best = systemConfig;
+        double best_q = getConfigQuality(systemConfig, traces);
+        int scored = 1;
+        ArrayList<String> keys = new ArrayList<>(systemConfig.getMap().keySet());
+        //cheapest first: the norms whose candidates are cached (the sort is stable)
+        keys.sort(Comparator.comparing(key -> !cache.hasCandidates(traces, systemConfig.get(key), getCandidatesKey(systemConfig.get(key), revStrategy))));
+        LinkedHashMap<String, ArrayList<DNFNorm>> candidates = new LinkedHashMap<>();
+        LinkedHashMap<String, ArrayList<Double>> qualities = new LinkedHashMap<>();
+        Set<String> revised_keys = new HashSet<>(); //the norms whose candidates have all been scored
+        boolean synthesised = true;
+        EvaluationIndex index = metric.equals("random") ? null : cache.getIndex(traces);
+        for(String key : keys) {
+            if(isPastDeadline()) {
+                synthesised = false;
+                break;
+            }
+            DNFNorm norm = systemConfig.get(key);
+            LinkedHashMap<String, DNFNorm> distinct = new LinkedHashMap<>();
+            for(DNFNorm n : reviseNorm(norm, key, systemConfig.getNormsTypes(), revStrategy, traces))
+                if(!n.isEmpty())
+                    distinct.putIfAbsent(n.toString(), n);
+            ArrayList<DNFNorm> norm_candidates = new ArrayList<>();
+            HashMap<DNFNorm, Double> norm_qualities = new HashMap<>();
+            for(DNFNorm n : distinct.values()) {
+                if(isPastDeadline()) {
+                    synthesised = false;
+                    break;
+                }
+                if(index!=null) //computed w.r.t. the norm they revise
+                    index.getViolations(n, norm);
+                norm_qualities.put(n, getCachedNormQuality(n, traces, bound_metric));
+                norm_candidates.add(n);
+            }
+            if(synthesised)
+                revised_keys.add(key);
+            if(norm_candidates.isEmpty()) {
+                if(synthesised) //no combination of candidates exists
+                    return new AnytimeRevision(best, best_q, best_q, true, scored);
+                break;
+            }
+            //most promising first
+            norm_candidates.sort((lhs, rhs) -> {
+                int cmp = Double.compare(norm_qualities.get(rhs), norm_qualities.get(lhs));
+                return cmp!=0 ? cmp : lhs.toString().compareTo(rhs.toString());
+            });
+            candidates.put(key, norm_candidates);
+            qualities.put(key, norm_candidates.stream().map(norm_qualities::get).collect(Collectors.toCollection(ArrayList::new)));
+            if(!synthesised)
+                break;
+            //the best candidates found so far, with the norms not revised yet
+            LinkedHashMap<String, DNFNorm> map = new LinkedHashMap<>(systemConfig.getMap());
+            for(Map.Entry<String, ArrayList<DNFNorm>> e : candidates.entrySet())
+                map.put(e.getKey(), e.getValue().get(0));
+            Configuration c = new Configuration(map, systemConfig.getNormsTypes());
+            double q = getConfigQuality(c, traces);
+            scored++;
+            if(q>best_q) {
+                best = c;
+                best_q = q;
+            }
+        }
+        if(!synthesised) {
+            //the candidates not scored yet can be as good as possible (every configuration has quality 0 with the metric random)
+            double max_quality = metric.equals("random") ? 0.0 : MAX_QUALITY;
+            double bound = 0.0;
+            for(String key : systemConfig.getMap().keySet())
+                bound = bound + (revised_keys.contains(key) ? qualities.get(key).get(0) : max_quality);
+            bound = bound/keys.size();
+            return new AnytimeRevision(best, best_q, Math.max(best_q, bound), false, scored);
+        }
+        //best-first enumeration of the combinations (in the order of the keys of the configuration)
+        ArrayList<String> config_keys = new ArrayList<>(systemConfig.getMap().keySet());
+        Comparator<int[]> by_bound = (lhs, rhs) -> {
+            int cmp = Double.compare(getTupleBound(qualities, config_keys, rhs), getTupleBound(qualities, config_keys, lhs));
+            return cmp!=0 ? cmp : Arrays.compare(lhs, rhs);
+        };
+        PriorityQueue<int[]> queue = new PriorityQueue<>(by_bound);
+        Set<List<Integer>> visited = new HashSet<>();
+        queue.add(new int[config_keys.size()]);
+        visited.add(Collections.nCopies(config_keys.size(), 0));
+        boolean complete = true;
+        while(!queue.isEmpty()) {
+            if(getTupleBound(qualities, config_keys, queue.peek()) <= best_q+BOUND_TOLERANCE)
+                break; //no remaining combination can be better
+            if(isPastDeadline()) {
+                complete = false;
+                break;
+            }
+            int[] tuple = queue.poll();
+            LinkedHashMap<String, DNFNorm> map = new LinkedHashMap<>(systemConfig.getMap());
+            for(int i=0; i<config_keys.size(); i++)
+                map.put(config_keys.get(i), candidates.get(config_keys.get(i)).get(tuple[i]));
+            Configuration c = new Configuration(map, systemConfig.getNormsTypes());
+            double q = getConfigQuality(c, traces);
+            scored++;
+            if(q>best_q) {
+                best = c;
+                best_q = q;
+            }
+            for(int i=0; i<tuple.length; i++) {
+                if(tuple[i]+1<candidates.get(config_keys.get(i)).size()) {
+                    int[] next = tuple.clone();
+                    next[i]++;
+                    if(visited.add(Arrays.stream(next).boxed().collect(Collectors.toList())))
+                        queue.add(next);
+                }
+            }
+        }
+        double bound = complete ? best_q : Math.max(best_q, getTupleBound(qualities, config_keys, queue.peek()));
+        return new AnytimeRevision(best, best_q, bound, complete, scored);
+    }
+
+    double getTupleBound(LinkedHashMap<String, ArrayList<Double>> qualities, List<String> keys, int[] tuple) {
+        /**
+         * Returns the mean quality of the candidates of the combination tuple (summed in the order of the keys,
+         * as in getMeanNormQuality)
+         */
+        double bound = 0.0;
+        for(int i=0; i<tuple.length; i++)
+            bound = bound + qualities.get(keys.get(i)).get(tuple[i]);
+        return bound/tuple.length;
+    }
+
     public LinkedHashMap<String, ArrayList<DNFNorm>> synthesis(String revision_strategy, Configuration config, ArrayList<Trace> traces) {
         /**
          * The synthesis step of DNR
          */
         LinkedHashMap<String, ArrayList<DNFNorm>> new_possible_norms = new LinkedHashMap<>();
+        prunedCombinations = 0;
+        instantiatedCombinations = 0;
         if(config!=null) {
+            //the violation vectors of the candidates are needed by the deduplication and to score them
+            EvaluationIndex index = dedup || !metric.equals("random") ? cache.getIndex(traces) : null;
             Iterator<Map.Entry<String, DNFNorm>> iter = config.getMap().entrySet().iterator();
             while (iter.hasNext()) {
                 Map.Entry<String, DNFNorm> n_conf = iter.next();
-                new_possible_norms.put(n_conf.getKey(), new ArrayList<>(reviseNorm(n_conf.getValue(), n_conf.getKey(), config.getNormsTypes(), revision_strategy, traces)));
+                ArrayList<DNFNorm> candidates = new ArrayList<>(reviseNorm(n_conf.getValue(), n_conf.getKey(), config.getNormsTypes(), revision_strategy, traces));
+                if(index!=null)
+                    for(DNFNorm c : candidates) //computed w.r.t. the norm they revise
+                        index.getViolations(c, n_conf.getValue());
+                if(dedup)
+                    candidates = deduplicateCandidates(n_conf.getValue(), candidates, index);
+                new_possible_norms.put(n_conf.getKey(), candidates);
             }
+            System.out.println("Pruned "+prunedCombinations+" infeasible combinations of components, created "+instantiatedCombinations+" norms");
         }
         return new_possible_norms;
     }
 
+    ArrayList<DNFNorm> deduplicateCandidates(DNFNorm norm, List<DNFNorm> candidates, EvaluationIndex index) {
+        /**
+         * Optional deduplication stage of the synthesis step.
+         * Candidates with the same violation vector over the traces are indistinguishable for the selection step,
+         * so only one representative per equivalence class is kept: the candidate that changes the least components
+         * of the norm under revision (ties broken by the string representation, so the result does not depend
+         * on the order of the candidates)
+         */
+        LinkedHashMap<BitSet, DNFNorm> representatives = new LinkedHashMap<>();
+        for(DNFNorm c : candidates) {
+            BitSet signature = index.getViolations(c);
+            DNFNorm curr = representatives.get(signature);
+            if(curr==null || compareChange(norm, c, curr)<0)
+                representatives.put(signature, c);
+        }
+        ArrayList<DNFNorm> deduplicated = new ArrayList<>(representatives.values());
+        deduplicated.sort((lhs, rhs) -> compareChange(norm, lhs, rhs));
+        System.out.println("Deduplication kept "+deduplicated.size()+" out of "+candidates.size()+" candidates");
+        return deduplicated;
+    }
+
+    int compareChange(DNFNorm norm, DNFNorm lhs, DNFNorm rhs) {
+        /**
+         * Orders two candidate revisions of norm by the number of components they change, and then by their packed
+         * representations if both can be packed (see PackedHighwayNorm.compare), by their string otherwise
+         */
+        int diff = Integer.compare(getNrChangedComponents(norm, lhs), getNrChangedComponents(norm, rhs));
+        if(diff!=0)
+            return diff;
+        long lhs_code = PackedHighwayNorm.pack(lhs);
+        long rhs_code = PackedHighwayNorm.pack(rhs);
+        if(lhs_code!=PackedHighwayNorm.NOT_PACKABLE && rhs_code!=PackedHighwayNorm.NOT_PACKABLE)
+            return PackedHighwayNorm.compare(lhs_code, rhs_code);
+        return lhs.toString().compareTo(rhs.toString());
+    }
+
+    int getNrChangedComponents(DNFNorm norm, DNFNorm candidate) {
+        /**
+         * Returns the number of components (condition, prohibition, deadline) in which candidate differs from norm
+         */
+        int changed = 0;
+        if(!candidate.getCondition().toString().equals(norm.getCondition().toString()))
+            changed++;
+        if(!candidate.getProhibition().toString().equals(norm.getProhibition().toString()))
+            changed++;
+        if(!candidate.getDeadline().toString().equals(norm.getDeadline().toString()))
+            changed++;
+        return changed;
+    }
+
     public LinkedHashMap<Configuration, Double> selection (Configuration currConfig, LinkedHashMap<String, ArrayList<DNFNorm>> candidateNorms, ArrayList<Trace> traces) {
         /**
-         * The selection step of DNR
+         * The selection step of DNR.
+         * It generates the configurations to consider, scores them (concurrently if parallelism is higher than 1)
+         * and returns them with their quality, sorted by quality (configurations with the same quality are kept in
+         * the order in which they have been generated)
          */
+        //here I score all config and I sort them by quality
+        long scored = scoredConfigurations.get();
+        long reused = reusedConfigurations.get();
+        List<ScoredConfiguration> ranking;
+        switch (selectionMode) {
+            case "bounded":
+                ranking = rankConfigurationsBounded(generateConfigurations(currConfig, candidateNorms), traces);
+                break;
+            case "racing":
+                ranking = rankConfigurationsRacing(generateConfigurations(currConfig, candidateNorms), traces);
+                break;
+            case "sequential":
+                if(samples!=-1 && currConfig!=null && !candidateNorms.isEmpty())
+                    ranking = rankSequentialSamples(currConfig, candidateNorms, traces);
+                else //without Monte Carlo all combinations are scored anyway
+                    ranking = rankConfigurations(generateConfigurations(currConfig, candidateNorms), traces);
+                break;
+            case "adaptive":
+                if(samples!=-1 && currConfig!=null && !candidateNorms.isEmpty())
+                    ranking = rankAdaptiveSamples(currConfig, candidateNorms, traces);
+                else //without Monte Carlo all combinations are scored anyway
+                    ranking = rankConfigurations(generateConfigurations(currConfig, candidateNorms), traces);
+                break;
+            case "pareto":
+                ranking = rankParetoFronts(generateConfigurations(currConfig, candidateNorms), traces);
+                break;
+            default:
+                if(!selectionMode.equals("all"))
+                    System.out.println("WARNING: selection mode "+selectionMode+" not found, scoring all configurations.");
+                ranking = rankConfigurations(generateConfigurations(currConfig, candidateNorms), traces);
+        }
+        System.out.println("Selection scored "+(scoredConfigurations.get()-scored)+" configurations, reused the quality of "+
+                (reusedConfigurations.get()-reused)+" configurations already scored");
         LinkedHashMap<Configuration, Double> new_configs_with_quality = new LinkedHashMap<>();
-        if(currConfig!=null && !candidateNorms.isEmpty()) {
-            if (this.samples == -1) {
-                /*
-                  Case where we do not want to adopt a Monte Carlo approach but we want to consider all possible cominations of configurations
-                 */
-                ArrayList<Configuration> new_possible_configurations = new ArrayList<>();
-                generateCombinations(candidateNorms, new ArrayList<>(candidateNorms.keySet()), new_possible_configurations, 0, currConfig);
-                for (Configuration possible_conf : new_possible_configurations) {
-                    if (!possible_conf.isEmpty())
-                        new_configs_with_quality.put(possible_conf, getConfigQuality(possible_conf, traces));
+        for(ScoredConfiguration sc : ranking) { //now I put, sorted by value
+            new_configs_with_quality.put(sc.getConfig(), sc.getQuality());
+        }
+        return new_configs_with_quality;
+    }
+
+    List<Configuration> generateConfigurations(Configuration currConfig, LinkedHashMap<String, ArrayList<DNFNorm>> candidateNorms) {
+        /**
+         * Returns the configurations considered by the selection step, i.e., all the combinations of candidate norms
+         * (enumerated lazily, see CombinationEnumerator) or, in the Monte Carlo approach, samples combinations drawn
+         * at random.
+         * Empty configurations are discarded, and the same configuration is kept only once, in the position where it
+         * has been generated first
+         */
+        if(currConfig==null || candidateNorms.isEmpty())
+            return new ArrayList<>();
+        if (this.samples == -1) {
+            /*
+              Case where we do not want to adopt a Monte Carlo approach but we want to consider all possible cominations of configurations
+             */
+            return new CombinationEnumerator(currConfig, candidateNorms);
+        }
+        /**here the case of Monte Carlo
+         * Note: instead of keeping just the best I store all of them, and then sort them later.
+         * Samples are always drawn here, sequentially, so that they do not depend on the parallelism*/
+        LinkedHashSet<Configuration> distinct_configurations = new LinkedHashSet<>();
+        for (int k = 0; k < samples; k++) {
+            //sample each possible norm
+            LinkedHashMap<String, DNFNorm> map = new LinkedHashMap<>();
+            for (String normid : candidateNorms.keySet()) {
+                ArrayList<DNFNorm> norm_candidate_list = candidateNorms.get(normid);
+                DNFNorm sampled_norm = norm_candidate_list.get(r.nextInt(norm_candidate_list.size()));
+                map.put(normid, sampled_norm);
+            }
+            //create a configuration
+            Configuration k_conf = new Configuration(map, currConfig.getNormsTypes());
+            if (!k_conf.isEmpty())
+                distinct_configurations.add(k_conf);
+        }
+        return new ArrayList<>(distinct_configurations);
+    }
+
+    List<ScoredConfiguration> rankConfigurationsRacing(List<Configuration> configs, List<Trace> traces) {
+        /**
+         * Racing selection.
+         * Configurations are scored on a growing random subsample of the traces (racingInitialSample traces, then
+         * doubling at every round), where the score of a trace is the fraction of norms classifying it correctly
+         * (accuracy) or its multi-label accuracy (mlacc). After every round, the configurations whose Hoeffding upper
+         * bound is lower than the selectionTopK-th highest lower bound are dropped, with radius sqrt(ln(2/d)/(2m)) for m
+         * traces scored, and d racingDelta divided by the number of configurations and of rounds (union bound).
+         * Only the surviving configurations are scored on all the traces, and they are returned sorted.
+         * Whether a norm is violated by a trace is computed only once, when first needed
+         */
+        if((!metric.equals("accuracy") && !metric.equals("mlacc")) || configs.size()<=selectionTopK || traces.isEmpty())
+            return rankConfigurations(configs, traces);
+        ArrayList<Trace> subsample = new ArrayList<>(traces);
+        Collections.shuffle(subsample, r);
+        int nr_rounds = 1;
+        for(int m=racingInitialSample; m<traces.size(); m=2*m)
+            nr_rounds++;
+        double log_term = Math.log(2.0*configs.size()*nr_rounds/racingDelta);
+        IdentityHashMap<DNFNorm, byte[]> outcomes = new IdentityHashMap<>(); //0 not evaluated yet, 1 obeyed, 2 violated
+        double[] sums = new double[configs.size()];
+        ArrayList<Integer> alive = new ArrayList<>();
+        for(int i=0; i<configs.size(); i++)
+            alive.add(i);
+        int scored_traces = 0;
+        int round = 0;
+        while(scored_traces<subsample.size() && alive.size()>selectionTopK) {
+            int next = Math.min(subsample.size(), round==0 ? racingInitialSample : 2*scored_traces);
+            for(int i : alive) {
+                Configuration c = configs.get(i);
+                for(int t=scored_traces; t<next; t++)
+                    sums[i] = sums[i] + getRacingTraceScore(c, subsample, t, outcomes);
+            }
+            scored_traces = next;
+            round++;
+            double radius = Math.sqrt(log_term/(2.0*scored_traces));
+            double[] lower_bounds = new double[alive.size()];
+            for(int j=0; j<alive.size(); j++)
+                lower_bounds[j] = sums[alive.get(j)]/scored_traces-radius;
+            Arrays.sort(lower_bounds);
+            double kth_lower_bound = lower_bounds[lower_bounds.length-selectionTopK];
+            final int m = scored_traces;
+            alive.removeIf(i -> sums[i]/m+radius < kth_lower_bound);
+        }
+        System.out.println("Racing kept "+alive.size()+" out of "+configs.size()+" configurations after "+round+" rounds ("+scored_traces+" traces)");
+        ArrayList<Configuration> survivors = new ArrayList<>();
+        for(int i : alive)
+            survivors.add(configs.get(i));
+        return rankConfigurations(survivors, traces);
+    }
+
+    double getRacingTraceScore(Configuration c, List<Trace> traces, int t, IdentityHashMap<DNFNorm, byte[]> outcomes) {
+        /**
+         * Returns the score of the t-th trace for configuration c (see rankConfigurationsRacing)
+         */
+        int obeyed = 0;
+        for(DNFNorm n : c.getNorms()) {
+            byte[] norm_outcomes = outcomes.computeIfAbsent(n, k -> new byte[traces.size()]);
+            if(norm_outcomes[t]==0)
+                norm_outcomes[t] = (byte) (n.isViol(traces.get(t))>-1 ? 2 : 1);
+            if(norm_outcomes[t]==1)
+                obeyed++;
+        }
+        int nr_norms = c.getMap().size();
+        boolean positive = traces.get(t).getObjEval();
+        if(metric.equals("mlacc")) //same as getMultiLabelScore
+            return positive ? (double) obeyed/nr_norms : (obeyed==0 ? 1.0 : 0.0);
+        return (double) (positive ? obeyed : nr_norms-obeyed)/nr_norms;
+    }
+
+    List<ScoredConfiguration> rankAdaptiveSamples(Configuration currConfig, LinkedHashMap<String, ArrayList<DNFNorm>> candidateNorms, List<Trace> traces) {
+        /**
+         * Adaptive Monte Carlo selection (cross-entropy method).
+         * Instead of drawing the candidate of each norm uniformly, samples combinations from a weight per candidate,
+         * learned from the configurations scored so far: samples are drawn in batches of adaptiveBatchSize, and after
+         * every batch the weights of each norm move (by adaptiveSmoothing) towards the frequency of its candidates in
+         * the best adaptiveElite fraction of the batch. Each candidate is drawn with probability at least
+         * adaptiveExploration divided by the number of candidates of its norm, so the unexplored candidates keep a
+         * chance of being drawn. Sampling stops after samples samples (or selectionTimeBudget ms, if positive).
+         * Configurations sampled more than once are scored only once, and they are returned sorted as in the standard
+         * Monte Carlo approach (only the best selectionTopK, unless keepAllConfigurations)
+         */
+        ArrayList<String> keys = new ArrayList<>(candidateNorms.keySet());
+        ArrayList<double[]> weights = new ArrayList<>();
+        for (String normid : keys) {
+            int size = candidateNorms.get(normid).size();
+            if(size==0)
+                return new ArrayList<>();
+            double[] w = new double[size];
+            Arrays.fill(w, 1.0/size);
+            weights.add(w);
+        }
+        long start = System.currentTimeMillis();
+        HashMap<Configuration, Double> qualities = new HashMap<>();
+        TopKRanking scored = new TopKRanking(getRankingSize());
+        int batch_size = Math.max(1, Math.min(adaptiveBatchSize, samples));
+        int nr_samples = 0;
+        double best = Double.NEGATIVE_INFINITY;
+        while(nr_samples<samples && (selectionTimeBudget<=0 || System.currentTimeMillis()-start<selectionTimeBudget)) {
+            ArrayList<int[]> batch = new ArrayList<>();
+            ArrayList<Double> batch_qualities = new ArrayList<>();
+            for(int b=0; b<batch_size && nr_samples<samples; b++, nr_samples++) {
+                int[] tuple = new int[keys.size()];
+                LinkedHashMap<String, DNFNorm> map = new LinkedHashMap<>();
+                for(int i=0; i<keys.size(); i++) {
+                    tuple[i] = sampleCandidate(weights.get(i));
+                    map.put(keys.get(i), candidateNorms.get(keys.get(i)).get(tuple[i]));
+                }
+                Configuration c = new Configuration(map, currConfig.getNormsTypes());
+                if(c.isEmpty())
+                    continue;
+                Double quality = qualities.get(c);
+                if(quality==null) {
+                    quality = getConfigQuality(c, traces);
+                    scored.add(new ScoredConfiguration(c, quality, qualities.size()));
+                    qualities.put(c, quality);
+                    best = Math.max(best, quality);
+                }
+                batch.add(tuple);
+                batch_qualities.add(quality);
+            }
+            if(batch.isEmpty())
+                continue;
+            //the elite of the batch (ties broken by the order in which the samples were drawn)
+            ArrayList<Integer> order = new ArrayList<>();
+            for(int b=0; b<batch.size(); b++)
+                order.add(b);
+            order.sort((lhs, rhs) -> Double.compare(batch_qualities.get(rhs), batch_qualities.get(lhs)));
+            int nr_elite = (int) Math.max(1, Math.ceil(adaptiveElite*batch.size()));
+            for(int i=0; i<keys.size(); i++) {
+                double[] w = weights.get(i);
+                double[] freq = new double[w.length];
+                for(int e=0; e<nr_elite; e++)
+                    freq[batch.get(order.get(e))[i]] += 1.0/nr_elite;
+                for(int j=0; j<w.length; j++)
+                    w[j] = adaptiveSmoothing*freq[j]+(1.0-adaptiveSmoothing)*w[j];
+            }
+        }
+        System.out.println("Adaptive sampling scored "+qualities.size()+" distinct configurations out of "+nr_samples+" samples, best quality "+best);
+        return scored.getRanking();
+    }
+
+    int sampleCandidate(double[] weights) {
+        /**
+         * Draws the index of a candidate with probability adaptiveExploration/n+(1-adaptiveExploration)*weights[i]
+         */
+        double x = r.nextDouble();
+        double cumulative = 0.0;
+        for(int i=0; i<weights.length; i++) {
+            cumulative = cumulative + adaptiveExploration/weights.length+(1.0-adaptiveExploration)*weights[i];
+            if(x<cumulative)
+                return i;
+        }
+        return weights.length-1; //rounding errors
+    }
+
+    List<ScoredConfiguration> rankSequentialSamples(Configuration currConfig, LinkedHashMap<String, ArrayList<DNFNorm>> candidateNorms, List<Trace> traces) {
+        /**
+         * Sequential Monte Carlo selection.
+         * Combinations of candidate norms are drawn without replacement, with a lazy Fisher-Yates shuffle of their
+         * indexes in the CombinationEnumerator (only the positions already swapped are stored), and scored as soon as
+         * they are drawn. Sampling stops when one of the following happens:
+         * - the last w samples did not significantly improve the best quality, with (1-sequentialEpsilon)^w <=
+         *   sequentialDelta, i.e., with probability at least 1-sequentialDelta the best configuration is among the best
+         *   sequentialEpsilon fraction of the combinations, up to configurations that are not significantly better
+         *   (so another sample is unlikely to change it). With metrics accuracy and mlacc, whose quality is the average
+         *   of a score in [0,1] per trace, an improvement is significant only if the new best quality exceeds the
+         *   previous one by more than the Hoeffding radius sqrt(2ln(2/sequentialDelta)/m) of the difference of two
+         *   averages over the same m traces (as in racing); otherwise any improvement is significant;
+         * - samples combinations have been drawn, or selectionTimeBudget milliseconds have passed (if positive);
+         * - all the combinations have been drawn.
+         * The gap between the best and the runner-up is reported with its lower confidence bound (the gap minus the
+         * radius): it does not stop the sampling, as with ties (common with small datasets) it would never be positive.
+         * The sampled configurations are returned sorted as in the standard Monte Carlo approach (only the best
+         * selectionTopK, unless keepAllConfigurations)
+         */
+        CombinationEnumerator combinations = new CombinationEnumerator(currConfig, candidateNorms);
+        long space_size = combinations.getNrCombinations();
+        if(space_size==0)
+            return new ArrayList<>();
+        int patience = (int) Math.ceil(Math.log(sequentialDelta)/Math.log(1.0-sequentialEpsilon));
+        double radius = 0.0; //smallest significant improvement of the best quality
+        if((metric.equals("accuracy") || metric.equals("mlacc")) && !traces.isEmpty())
+            radius = Math.sqrt(2.0*Math.log(2.0/sequentialDelta)/traces.size());
+        long start = System.currentTimeMillis();
+        HashMap<Long, Long> swapped = new HashMap<>(); //positions of the shuffle holding an index other than their own
+        long nr_sampled = 0;
+        TopKRanking scored = new TopKRanking(getRankingSize());
+        double best = Double.NEGATIVE_INFINITY;
+        double runner_up = Double.NEGATIVE_INFINITY;
+        int not_improving = 0;
+        String stop_reason = "sample budget";
+        for (int k = 0; k < samples; k++) {
+            if(nr_sampled==space_size) {
+                stop_reason = "all combinations sampled";
+                break;
+            }
+            if(selectionTimeBudget>0 && System.currentTimeMillis()-start>=selectionTimeBudget) {
+                stop_reason = "time budget";
+                break;
+            }
+            //swap position nr_sampled with a random position not drawn yet, and draw the index that ends up there
+            long j = nr_sampled + nextLong(r, space_size-nr_sampled);
+            Long at_j = swapped.get(j);
+            Long at_k = swapped.remove(nr_sampled);
+            long index = at_j==null ? j : at_j;
+            if(j!=nr_sampled)
+                swapped.put(j, at_k==null ? nr_sampled : at_k);
+            nr_sampled++;
+            Configuration k_conf = combinations.get(index);
+            double quality = getConfigQuality(k_conf, traces);
+            scored.add(new ScoredConfiguration(k_conf, quality, index));
+            if(quality>best) {
+                boolean significant = best==Double.NEGATIVE_INFINITY || quality-best>radius;
+                runner_up = best;
+                best = quality;
+                if(significant) {
+                    not_improving = 0;
+                    continue;
+                }
+            }
+            else if(quality>runner_up)
+                runner_up = quality;
+            not_improving++;
+            if(not_improving>=patience) {
+                stop_reason = "no significant improvement in the last "+not_improving+" samples";
+                break;
+            }
+        }
+        if(nr_sampled==space_size)
+            stop_reason = "all combinations sampled";
+        double gap = best-runner_up;
+        System.out.println("Sequential sampling stopped ("+stop_reason+") after "+nr_sampled+" samples out of "+space_size+
+                " combinations: best quality "+best+", runner-up "+runner_up+", gap "+gap+" (at least "+Math.max(0.0, gap-radius)+
+                " with probability "+(1.0-sequentialDelta)+")"+
+                (nr_sampled==space_size ? "" : ", best in the top "+sequentialEpsilon+" of the combinations with probability "+(1.0-Math.pow(1.0-sequentialEpsilon, not_improving))));
+        return scored.getRanking();
+    }
+
+    static long nextLong(Random r, long bound) {
+        /**
+         * Returns a long drawn uniformly in [0, bound) (bound positive), rejecting the draws of the last incomplete
+         * multiple of bound as Random.nextInt(int) does
+         */
+        long bits, value;
+        do {
+            bits = r.nextLong() >>> 1;
+            value = bits % bound;
+        } while(bits-value+(bound-1)<0);
+        return value;
+    }
+
+    List<ScoredConfiguration> rankParetoFronts(List<Configuration> configs, List<Trace> traces) {
+        /**
+         * Pareto selection: returns the configurations that are not dominated w.r.t. the objectives PARETO_OBJECTIVES
+         * (see getObjectives), sorted by ScoredConfiguration.RANKING, so that the best configuration is the one with
+         * the highest quality among them.
+         * Configurations are added to a ParetoFront as they are scored, so only the current non-dominated set is kept.
+         * If keepAllConfigurations, all the configurations are kept and split into fronts with the fast non-dominated
+         * sort, and they are returned front by front (each sorted by ScoredConfiguration.RANKING)
+         */
+        if(keepAllConfigurations) {
+            ArrayList<ScoredConfiguration> scored = new ArrayList<>(configs.size());
+            ArrayList<double[]> objectives = new ArrayList<>(configs.size());
+            for(int i=0; i<configs.size(); i++) {
+                ScoredConfiguration sc = new ScoredConfiguration(configs.get(i), getConfigQuality(configs.get(i), traces), i);
+                scored.add(sc);
+                objectives.add(getObjectives(sc.getConfig(), traces, sc.getQuality()));
+            }
+            List<List<Integer>> fronts = ParetoFront.sortFronts(objectives);
+            ArrayList<ScoredConfiguration> ranking = new ArrayList<>(configs.size());
+            for(List<Integer> front : fronts) {
+                ArrayList<ScoredConfiguration> front_configs = new ArrayList<>(front.size());
+                for(int i : front)
+                    front_configs.add(scored.get(i));
+                front_configs.sort(ScoredConfiguration.RANKING);
+                ranking.addAll(front_configs);
+            }
+            System.out.println("Pareto selection sorted "+configs.size()+" configurations into "+fronts.size()+" fronts, "+
+                    (fronts.isEmpty() ? 0 : fronts.get(0).size())+" not dominated");
+            return ranking;
+        }
+        ParetoFront front = new ParetoFront();
+        for(int i=0; i<configs.size(); i++) {
+            Configuration c = configs.get(i);
+            double quality = getConfigQuality(c, traces);
+            front.add(new ScoredConfiguration(c, quality, i), getObjectives(c, traces, quality));
+        }
+        System.out.println("Pareto selection scored "+configs.size()+" configurations, "+front.size()+" not dominated");
+        return front.getFront();
+    }
+
+    double[] getObjectives(Configuration c, List<Trace> traces, double quality) {
+        /**
+         * Returns the objective vector of configuration c with quality quality (see PARETO_OBJECTIVES), computed in a
+         * single pass over the traces from the violation vectors of its norms: the quality, the fraction of traces
+         * violating at least one norm (restrictiveness), and the average CO2 and travel time (see
+         * MASObjectivesEvaluator) of the traces that do not violate any norm, i.e., of the behaviour that the
+         * configuration allows. If no trace is allowed, the average over all traces is used. The last three are
+         * negated, so that all the objectives are maximized
+         */
+        EvaluationIndex index = cache.getIndex(traces);
+        BitSet violating = new BitSet(index.size());
+        for(DNFNorm norm : c.getNorms())
+            violating.or(index.getViolations(norm));
+        double co2 = 0.0, traveltime = 0.0, all_co2 = 0.0, all_traveltime = 0.0;
+        int allowed = 0;
+        for(int t=0; t<index.size(); t++) {
+            Trace tr = index.getTraces().get(t);
+            all_co2 = all_co2 + tr.getCo2_eval();
+            all_traveltime = all_traveltime + tr.getTraveltime_eval();
+            if(!violating.get(t)) {
+                co2 = co2 + tr.getCo2_eval();
+                traveltime = traveltime + tr.getTraveltime_eval();
+                allowed++;
+            }
+        }
+        if(index.size()==0)
+            return new double[]{quality, 0.0, 0.0, 0.0};
+        if(allowed==0)
+            return new double[]{quality, -1.0, -all_co2/index.size(), -all_traveltime/index.size()};
+        return new double[]{quality, -(double) (index.size()-allowed)/index.size(), -co2/allowed, -traveltime/allowed};
+    }
+
+    List<ScoredConfiguration> rankConfigurations(List<Configuration> configs, List<Trace> traces) {
+        /**
+         * Scores the configurations and returns the best selectionTopK of them (or all of them, if
+         * keepAllConfigurations) sorted by ScoredConfiguration.RANKING
+         */
+        return rankConfigurations(configs, traces, getRankingSize());
+    }
+
+    List<ScoredConfiguration> rankConfigurations(List<Configuration> configs, List<Trace> traces, int k) {
+        /**
+         * Scores the configurations and returns the best k of them sorted by ScoredConfiguration.RANKING.
+         * With parallelism higher than 1 the configurations are split over a fork-join pool, where every task ranks its
+         * own configurations and the rankings of the tasks are then merged. The ranking is the same as the sequential one.
+         * The evaluation index of the traces is resolved once, so the tasks do not look up the dataset in the cache.
+         * The combinations of a CombinationEnumerator are split by their long index, so all of them are ranked, and
+         * they are scored from their tuples (see scoreCombinations)
+         */
+        EvaluationIndex index = cache.getIndex(traces);
+        long size = configs.size();
+        List<AtomicReferenceArray<BitSet>> slot_viols = null;
+        if(configs instanceof CombinationEnumerator) {
+            CombinationEnumerator combinations = (CombinationEnumerator) configs;
+            size = combinations.getNrCombinations();
+            slot_viols = new ArrayList<>();
+            for(List<DNFNorm> norms : combinations.getSlotNorms())
+                slot_viols.add(new AtomicReferenceArray<>(norms.size()));
+        }
+        if(parallelism>1 && size>1) {
+            long grain = Math.max(1, size/(parallelism*SCORING_TASKS_PER_THREAD));
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                return pool.invoke(new ScoringTask(configs, index, slot_viols, 0, size, grain, k));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return scoreRange(configs, index, slot_viols, 0, size, k);
+    }
+
+    List<ScoredConfiguration> rankConfigurationsBounded(List<Configuration> configs, List<Trace> traces) {
+        /**
+         * Bounded selection: returns the first selectionTopK configurations of the ranking of rankConfigurations
+         * (the same configurations, with the same quality and in the same order) without scoring the configurations
+         * that cannot enter the top-k.
+         * Every configuration has a cheap optimistic bound of its quality, the average accuracy of its norms (computed
+         * once per norm), which is the quality itself with metric accuracy and an upper bound of the multi-label accuracy.
+         * Configurations are considered by decreasing bound, and the search stops at the first one whose bound is lower
+         * than the k-th quality found so far. With mlacc, the quality is then computed block by block from the
+         * violation vectors of the norms (see getBoundedMultiLabelAccuracy), and a configuration is discarded as soon
+         * as it certainly cannot reach the k-th quality.
+         * If keepAllConfigurations, no configuration can be discarded, so all of them are ranked by rankConfigurations
+         */
+        if((!metric.equals("accuracy") && !metric.equals("mlacc")) || keepAllConfigurations) {
+            List<ScoredConfiguration> ranking = rankConfigurations(configs, traces);
+            return keepAllConfigurations ? ranking : new ArrayList<>(ranking.subList(0, Math.min(selectionTopK, ranking.size())));
+        }
+        double[] bounds = new double[configs.size()];
+        ArrayList<Integer> order = new ArrayList<>(configs.size());
+        for(int i=0; i<configs.size(); i++) {
+            bounds[i] = getMeanNormQuality(configs.get(i), traces, "accuracy");
+            order.add(i);
+        }
+        order.sort((lhs, rhs) -> bounds[lhs]!=bounds[rhs] ? Double.compare(bounds[rhs], bounds[lhs]) : Integer.compare(lhs, rhs));
+        TopKRanking top = new TopKRanking(selectionTopK);
+        int scored = 0;
+        for(int i : order) {
+            double kth = top.isFull() ? top.getLast().getQuality() : Double.NEGATIVE_INFINITY;
+            if(bounds[i] < kth-BOUND_TOLERANCE)
+                break; //the bounds of the remaining configurations are not higher
+            Configuration c = configs.get(i);
+            double quality = metric.equals("mlacc") ? getBoundedMultiLabelAccuracy(c, traces, kth-BOUND_TOLERANCE) : getConfigQuality(c, traces);
+            if(Double.isNaN(quality))
+                continue;
+            scored++;
+            top.add(new ScoredConfiguration(c, quality, i));
+        }
+        System.out.println("Bounded selection scored "+scored+" out of "+configs.size()+" configurations");
+        return top.getRanking();
+    }
+
+    double getBoundedMultiLabelAccuracy(Configuration c, List<Trace> traces, double threshold) {
+        /**
+         * Returns the multi-label accuracy of c (the same as getConfigQuality), or NaN as soon as it is certainly lower
+         * than threshold. The traces are scored in blocks of BOUND_BLOCK_SIZE from the violation vectors of the norms,
+         * and after every block the accuracy is bounded assuming all the remaining traces correctly classified.
+         * The scores are summed in the order of the traces, so the sum is the quality itself (see getMultiLabelAccuracy)
+         */
+        if(traces.isEmpty())
+            return getConfigQuality(c, traces);
+        EvaluationIndex index = cache.getIndex(traces);
+        List<BitSet> viols = getViolations(c, index);
+        Double cached_quality = cache.getQuality(index, viols, metric);
+        if(cached_quality!=null) {
+            reusedConfigurations.incrementAndGet();
+            return cached_quality < threshold ? Double.NaN : cached_quality;
+        }
+        int n = viols.size();
+        BitSet labels = index.getLabels();
+        double ml_acc = 0.0;
+        for(int from=0; from<index.size(); from=from+BOUND_BLOCK_SIZE) {
+            int to = Math.min(index.size(), from+BOUND_BLOCK_SIZE);
+            for(int t=from; t<to; t++) {
+                int obeyed = 0;
+                for(BitSet viol : viols)
+                    if(!viol.get(t))
+                        obeyed++;
+                //same as getMultiLabelScore
+                if(labels.get(t))
+                    ml_acc = ml_acc + (n > 0 ? (double) obeyed/n : 1.0);
+                else
+                    ml_acc = ml_acc + (obeyed == 0 ? 1.0 : 0.0);
+            }
+            if((ml_acc+index.size()-to)/index.size() < threshold)
+                return Double.NaN;
+        }
+        double quality = ml_acc/index.size();
+        cache.putQuality(index, viols, metric, quality);
+        scoredConfigurations.incrementAndGet();
+        return quality;
+    }
+
+    List<ScoredConfiguration> scoreRange(List<Configuration> configs, EvaluationIndex index, List<AtomicReferenceArray<BitSet>> slot_viols, long from, long to, int k) {
+        /**
+         * Scores the configurations (or combinations) from index from (inclusive) to index to (exclusive), and returns
+         * the best k of them sorted
+         */
+        if(configs instanceof CombinationEnumerator)
+            return scoreCombinations((CombinationEnumerator) configs, index, slot_viols, from, to, k);
+        return scoreConfigurations(configs, index, (int) from, (int) to, k);
+    }
+
+    List<ScoredConfiguration> scoreCombinations(CombinationEnumerator combinations, EvaluationIndex index, List<AtomicReferenceArray<BitSet>> slot_viols, long from, long to, int k) {
+        /**
+         * Scores the combinations from index from (inclusive) to index to (exclusive) w.r.t. the traces of index, and
+         * returns the best k of them sorted. A combination is scored from its tuple and the violation vectors of the
+         * norms it takes (slot_viols, filled when first needed and shared by the tasks), and its configuration is
+         * created only if it enters the ranking
+         */
+        List<List<DNFNorm>> slot_norms = combinations.getSlotNorms();
+        TopKRanking scored = new TopKRanking(k);
+        ArrayList<BitSet> viols = new ArrayList<>(slot_norms.size());
+        for(long i=from; i<to; i++) {
+            double quality = 0.0;
+            if(!metric.equals("random")) {
+                int[] tuple = combinations.getTuple(i);
+                viols.clear();
+                for(int slot=0; slot<slot_norms.size(); slot++) {
+                    int pos = combinations.getSlot(tuple, slot);
+                    BitSet viol = slot_viols.get(slot).get(pos);
+                    if(viol==null) {
+                        viol = index.getViolations(slot_norms.get(slot).get(pos));
+                        slot_viols.get(slot).set(pos, viol);
+                    }
+                    viols.add(viol);
+                }
+                quality = getConfigQuality(index, viols);
+            }
+            if(scored.accepts(quality, i))
+                scored.add(new ScoredConfiguration(combinations.get(i), quality, i));
+        }
+        return scored.getRanking();
+    }
+
+    List<ScoredConfiguration> scoreConfigurations(List<Configuration> configs, EvaluationIndex index, int from, int to, int k) {
+        /**
+         * Scores the configurations from index from (inclusive) to index to (exclusive) w.r.t. the traces of index, and
+         * returns the best k of them sorted
+         */
+        TopKRanking scored = new TopKRanking(k);
+        for(int i=from; i<to; i++)
+            scored.add(new ScoredConfiguration(configs.get(i), getConfigQuality(configs.get(i), index), i));
+        return scored.getRanking();
+    }
+
+    class ScoringTask extends RecursiveTask<List<ScoredConfiguration>> {
+        /**
+         * Fork-join task ranking the configurations from index from (inclusive) to index to (exclusive)
+         */
+        private static final long serialVersionUID = 1L;
+        private final List<Configuration> configs;
+        private final EvaluationIndex index;
+        private final List<AtomicReferenceArray<BitSet>> slotViols;
+        private final long from;
+        private final long to;
+        private final long grain;
+        private final int k;
+
+        ScoringTask(List<Configuration> configs, EvaluationIndex index, List<AtomicReferenceArray<BitSet>> slotViols, long from, long to, long grain, int k) {
+            this.configs = configs;
+            this.index = index;
+            this.slotViols = slotViols;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.k = k;
+        }
+
+        @Override
+        protected List<ScoredConfiguration> compute() {
+            if(to-from<=grain)
+                return scoreRange(configs, index, slotViols, from, to, k);
+            long mid = (from+to) >>> 1;
+            ScoringTask left = new ScoringTask(configs, index, slotViols, from, mid, grain, k);
+            left.fork();
+            List<ScoredConfiguration> right = new ScoringTask(configs, index, slotViols, mid, to, grain, k).compute();
+            return ScoredConfiguration.merge(left.join(), right, k);
+        }
+    }
+
+    public static boolean isSearchStrategy(String revStrategy) {
+        /**
+         * Determines whether the revision strategy searches the revised configuration directly, instead of
+         * synthesising all the candidate revisions and selecting the best combination
+         */
+        return revStrategy.equals("localsearch") || revStrategy.equals("evolutionary");
+    }
+
+    Configuration search(String revStrategy, Configuration systemConfig, ArrayList<Trace> traces) {
+        /**
+         * Revises the configuration with the search strategy revStrategy
+         */
+        if(systemConfig==null || systemConfig.isEmpty())
+            return null;
+        switch(revStrategy) {
+            case "localsearch":
+                return localSearch(systemConfig, traces);
+            case "evolutionary":
+                return evolutionarySearch(systemConfig, traces);
+        }
+        System.out.println("WARNING: revision strategy "+revStrategy+" not found.");
+        return null;
+    }
+
+    Configuration localSearch(Configuration start, ArrayList<Trace> traces) {
+        /**
+         * Local search revision: starting from configuration start, it repeatedly moves to the best neighbour, i.e.,
+         * the best configuration obtained by replacing one norm with one of its neighbours (see getNeighbourNorms).
+         * Only the neighbours are scored, and the neighbour norms are evaluated incrementally w.r.t. the norm they
+         * revise. The configurations visited recently are tabu (unless better than the best found so far), so that the
+         * search can leave local optima, and it stops after localSearchIterations moves or localSearchPatience moves
+         * without improvement. It then restarts localSearchRestarts times from a random perturbation of the best
+         * configuration found. Returns the best configuration found
+         */
+        Configuration best = start;
+        double best_q = getConfigQuality(start, traces);
+        int scored = 1;
+        int moves = 0;
+        for(int restart=0; restart<=localSearchRestarts && !isPastDeadline(); restart++) {
+            Configuration curr = best;
+            if(restart>0) {
+                for(int i=0; i<LOCAL_SEARCH_KICK; i++) {
+                    List<Configuration> neighbours = getNeighbourConfigurations(curr, traces);
+                    if(neighbours.isEmpty())
+                        break;
+                    curr = neighbours.get(r.nextInt(neighbours.size()));
                 }
-            } else {
-                /**here the case of Monte Carlo
-                 * Note: instead of keeping just the best I store all of them in new_configs_with_quality, and then sort them later*/
-                for (int k = 0; k < samples; k++) {
-                    //sample each possible norm
-                    LinkedHashMap<String, DNFNorm> map = new LinkedHashMap<>();
-                    for (String normid : candidateNorms.keySet()) {
-                        ArrayList<DNFNorm> norm_candidate_list = candidateNorms.get(normid);
-                        DNFNorm sampled_norm = norm_candidate_list.get(r.nextInt(norm_candidate_list.size()));
-                        map.put(normid, sampled_norm);
+                double curr_q = getConfigQuality(curr, traces);
+                scored++;
+                if(curr_q>best_q) {
+                    best = curr;
+                    best_q = curr_q;
+                }
+            }
+            ArrayDeque<String> tabu = new ArrayDeque<>();
+            Set<String> tabu_set = new HashSet<>();
+            int no_improvement = 0;
+            for(int it=0; it<localSearchIterations && no_improvement<localSearchPatience && !isPastDeadline(); it++) {
+                Configuration next = null;
+                double next_q = Double.NEGATIVE_INFINITY;
+                int ties = 0;
+                for(Configuration c : getNeighbourConfigurations(curr, traces)) {
+                    double q = getConfigQuality(c, traces);
+                    scored++;
+                    if(tabu_set.contains(c.toString()) && q<=best_q)
+                        continue;
+                    if(q>next_q) {
+                        next = c;
+                        next_q = q;
+                        ties = 1;
                     }
-                    //create a configuration
-                    Configuration k_conf = new Configuration(map, currConfig.getNormsTypes());
-                    //compute accuracy of configuration
-                    if (!k_conf.isEmpty())
-                        new_configs_with_quality.put(k_conf, getConfigQuality(k_conf, traces));
-                    //if new accuracy is better than best_conf_accuracy update the bests
-                    // note I don't do the above comment here, and I sort them later (this way I can keep track of all the
-                    //sampled configurations
+                    else if(q==next_q && r.nextInt(++ties)==0) //ties broken at random, to move along plateaus
+                        next = c;
                 }
+                if(next==null)
+                    break;
+                tabu.addLast(curr.toString());
+                tabu_set.add(curr.toString());
+                if(tabu.size()>localSearchTabuSize)
+                    tabu_set.remove(tabu.removeFirst());
+                curr = next;
+                moves++;
+                if(next_q>best_q) {
+                    best = next;
+                    best_q = next_q;
+                    no_improvement = 0;
+                }
+                else
+                    no_improvement++;
             }
         }
-        //here I have now all config with their quality, I sort them
-        List<Map.Entry<Configuration, Double>> entries = new ArrayList<>(new_configs_with_quality.entrySet());
-        Collections.sort(entries,
-                (lhs, rhs) -> (rhs.getValue() - lhs.getValue()) > 0 ? 1 : ((rhs.getValue() - lhs.getValue()) == 0 ? 0 : -1));
-        new_configs_with_quality.clear();
-        for(Map.Entry<Configuration, Double> e : entries) { //now I put, sorted by value
-            new_configs_with_quality.put(e.getKey(), e.getValue());
+        System.out.println("Local search scored "+scored+" configurations in "+moves+" moves, best quality "+best_q);
+        return best;
+    }
+
+    Configuration evolutionarySearch(Configuration start, ArrayList<Trace> traces) {
+        /**
+         * Evolutionary revision: a population of evolutionaryPopulation configurations, initially random perturbations
+         * of start (and start itself), evolves for evolutionaryGenerations generations. Every generation keeps the best
+         * evolutionaryElite configurations, and creates the others from parents chosen by binary tournament, by
+         * crossover of their norms (component by component, see crossoverNorms) and by mutation (moving one norm to
+         * one of its neighbours, see getNeighbourNorms) with probability evolutionaryMutationRate.
+         * Children are always valid norms of the language, and the configurations already in the population are
+         * discarded. The fitness of a generation is computed in parallel (see rankConfigurations). With a non-negative
+         * evolutionarySeed the search is reproducible, otherwise it uses the random generator of DNR.
+         * Returns the best configuration found
+         */
+        Random er = evolutionarySeed>=0 ? new Random(evolutionarySeed) : r;
+        ArrayList<Configuration> population = new ArrayList<>();
+        Set<String> in_population = new HashSet<>();
+        population.add(start);
+        in_population.add(start.toString());
+        for(int attempts=0; population.size()<evolutionaryPopulation && attempts<evolutionaryPopulation*10; attempts++) {
+            Configuration c = start;
+            for(int i=0, moves=1+er.nextInt(LOCAL_SEARCH_KICK); i<moves; i++)
+                c = mutateConfiguration(c, traces, er);
+            if(in_population.add(c.toString()))
+                population.add(c);
+        }
+        List<ScoredConfiguration> ranking = rankConfigurations(population, traces, Integer.MAX_VALUE);
+        ScoredConfiguration best = ranking.get(0);
+        int scored = ranking.size();
+        int generation = 0;
+        for(; generation<evolutionaryGenerations && !isPastDeadline(); generation++) {
+            ArrayList<Configuration> next = new ArrayList<>();
+            in_population.clear();
+            for(int i=0; i<Math.min(evolutionaryElite, ranking.size()); i++) {
+                next.add(ranking.get(i).getConfig());
+                in_population.add(ranking.get(i).getConfig().toString());
+            }
+            for(int attempts=0; next.size()<evolutionaryPopulation && attempts<evolutionaryPopulation*10; attempts++) {
+                Configuration p1 = ranking.get(Math.min(er.nextInt(ranking.size()), er.nextInt(ranking.size()))).getConfig(); //the ranking is sorted
+                Configuration p2 = ranking.get(Math.min(er.nextInt(ranking.size()), er.nextInt(ranking.size()))).getConfig();
+                Configuration child = crossoverConfigurations(p1, p2, er);
+                if(er.nextDouble()<evolutionaryMutationRate)
+                    child = mutateConfiguration(child, traces, er);
+                if(in_population.add(child.toString()))
+                    next.add(child);
+            }
+            ranking = rankConfigurations(next, traces, Integer.MAX_VALUE);
+            scored = scored + next.size()-Math.min(evolutionaryElite, next.size());
+            if(ranking.get(0).getQuality()>best.getQuality())
+                best = ranking.get(0);
         }
-        return new_configs_with_quality;
+        System.out.println("Evolutionary search scored "+scored+" configurations in "+generation+" generations, best quality "+best.getQuality());
+        return best.getConfig();
+    }
+
+    Configuration mutateConfiguration(Configuration c, ArrayList<Trace> traces, Random er) {
+        /**
+         * Returns a random neighbour of configuration c (c itself if it has no neighbours)
+         */
+        List<Configuration> neighbours = getNeighbourConfigurations(c, traces);
+        if(neighbours.isEmpty())
+            return c;
+        return neighbours.get(er.nextInt(neighbours.size()));
+    }
+
+    Configuration crossoverConfigurations(Configuration p1, Configuration p2, Random er) {
+        /**
+         * Returns a configuration whose norms are the crossover of the corresponding norms of p1 and p2
+         */
+        LinkedHashMap<String, DNFNorm> map = new LinkedHashMap<>();
+        for(Map.Entry<String, DNFNorm> n_conf : p1.getMap().entrySet())
+            map.put(n_conf.getKey(), crossoverNorms(n_conf.getValue(), p2.get(n_conf.getKey()), n_conf.getKey(), er));
+        return new Configuration(map, p1.getNormsTypes());
+    }
+
+    DNFNorm crossoverNorms(DNFNorm n1, DNFNorm n2, String normID, Random er) {
+        /**
+         * Returns a norm that takes each component (condition, prohibition, deadline) from n1 or from n2 at random.
+         * If the combination is not a valid norm of the language, one of the two norms is returned as it is.
+         * The child is an instance of the type of n1 (the type of the norm normID)
+         */
+        if(n2==null || n2.isEmpty() || n1.toString().equals(n2.toString()))
+            return n1;
+        List<Conjunction> cond = er.nextBoolean() ? n1.getCondition() : n2.getCondition();
+        List<Conjunction> proh = er.nextBoolean() ? n1.getProhibition() : n2.getProhibition();
+        List<Conjunction> dead = er.nextBoolean() ? n1.getDeadline() : n2.getDeadline();
+        DNFNorm fallback = er.nextBoolean() ? n1 : n2;
+        if(!n1.isFeasible(cond, proh, dead))
+            return fallback;
+        try {
+            Constructor<? extends DNFNorm> cons = n1.getClass().getConstructor(String.class, List.class, List.class, List.class, Random.class);
+            DNFNorm child = cons.newInstance(normID, cond, proh, dead, er);
+            return child.isEmpty() ? fallback : child;
+        } catch(Exception e) {
+            System.out.println("ERROR IN CREATING A NEW INSTANCE OF NORM DYNAMICALLY during crossover");
+            e.printStackTrace();
+        }
+        return fallback;
+    }
+
+    List<Configuration> getNeighbourConfigurations(Configuration c, ArrayList<Trace> traces) {
+        /**
+         * Returns the configurations obtained from c by replacing one of its norms with one of its neighbours,
+         * sorted by norm and then by the string of the neighbour, so that the search does not depend on the order
+         * in which the neighbours are created
+         */
+        ArrayList<Configuration> neighbours = new ArrayList<>();
+        EvaluationIndex index = metric.equals("random") ? null : cache.getIndex(traces);
+        for(Map.Entry<String, DNFNorm> n_conf : c.getMap().entrySet()) {
+            ArrayList<DNFNorm> neighbour_norms = new ArrayList<>(reviseNorm(n_conf.getValue(), n_conf.getKey(), c.getNormsTypes(), "localsearch", traces));
+            neighbour_norms.sort(Comparator.comparing(DNFNorm::toString));
+            for(DNFNorm n : neighbour_norms) {
+                if(index!=null) //computed w.r.t. the norm they revise
+                    index.getViolations(n, n_conf.getValue());
+                LinkedHashMap<String, DNFNorm> map = new LinkedHashMap<>(c.getMap());
+                map.put(n_conf.getKey(), n);
+                neighbours.add(new Configuration(map, c.getNormsTypes()));
+            }
+        }
+        return neighbours;
     }
 
     public Configuration getBestConfigFromSelStep(LinkedHashMap<Configuration, Double> new_configs_with_quality) {
@@ -122,22 +1205,6 @@ public class DNR {
         return best_conf;
     }
 
-    void generateCombinations(LinkedHashMap<String, ArrayList<DNFNorm>> lists, ArrayList<String> keys, ArrayList<Configuration> result, int depth, Configuration current ) {
-        /**
-         * Function used to generate all possible combinations of revised norms in case of multiple norms
-         */
-        if (depth == lists.size()) {
-            result.add(current);
-            return;
-        }
-        for (int i = 0; i < lists.get(keys.get(depth)).size(); i++) {
-            LinkedHashMap<String, DNFNorm> new_current_map = new LinkedHashMap<>(current.getMap());
-            new_current_map.put(keys.get(depth), lists.get(keys.get(depth)).get(i));
-            Configuration new_current = new Configuration(new_current_map, current.getNormsTypes());
-            generateCombinations(lists, keys, result, depth + 1, new_current);
-        }
-    }
-
     ArrayList<Trace> getViolatingTraces( ArrayList<Trace> traces, DNFNorm n ) {
         return traces.stream()
                 .filter(t -> (n.isViol(t)>-1))
@@ -184,33 +1251,90 @@ public class DNR {
         return states_sets;
     }
 
+    LinkedHashMap<String, Set<State>> getCachedStates(ArrayList<Trace> traces, DNFNorm norm) {
+        /**
+         * Returns the six different types of states of norm in the traces, computing them only the first time
+         */
+        LinkedHashMap<String, Set<State>> states = cache.getStates(traces, norm);
+        if(states==null) {
+            states = getStates(traces, norm);
+            cache.putStates(traces, norm, states);
+        }
+        return states;
+    }
+
+    LinkedHashMap<String, Set<String>> getCachedRelProp(ArrayList<Trace> traces, DNFNorm norm) {
+        /**
+         * Returns, for each of the six types of states of norm, the propositions in the states related to the component
+         * of the norm they are used to revise, computing them only the first time
+         */
+        LinkedHashMap<String, Set<String>> prop = cache.getRelProp(traces, norm);
+        if(prop==null) {
+            LinkedHashMap<String, Set<State>> states = getCachedStates(traces, norm);
+            prop = new LinkedHashMap<>();
+            prop.put("CS", norm.getRelProp(states.get("CS"), "cond"));
+            prop.put("OPS", norm.getRelProp(states.get("OPS"), "cond"));
+            prop.put("IPS", norm.getRelProp(states.get("IPS"), "proh"));
+            prop.put("PS", norm.getRelProp(states.get("PS"), "proh"));
+            prop.put("CPS", norm.getRelProp(states.get("CPS"), "dead"));
+            prop.put("DS", norm.getRelProp(states.get("DS"), "dead"));
+            cache.putRelProp(traces, norm, prop);
+        }
+        return prop;
+    }
+
     Set<DNFNorm> reviseNorm( DNFNorm norm, String normID, LinkedHashMap<String, Class> normsTypes, String revision_type, ArrayList<Trace> traces ) {
         /**
          * Function that invokes the correct revisionOperations based on the revision_type
+         * The candidate norms are cached (packed, see RevisionCache.putCandidates), so revising again the same norm
+         * w.r.t. the same traces (and with the same space parameters or budgets) returns the same norms.
+         * With a space budget, the space parameters are tuned (see tuneSpaceParams) on a copy of the norm, and only if
+         * its candidates are not cached yet
          */
+        String candidates_key = getCandidatesKey(norm, revision_type);
+        ArrayList<DNFNorm> cached = cache.getCandidates(traces, norm, candidates_key, normID, r);
+        if(cached!=null) {
+            System.out.println("Reusing the "+revision_type+" candidates of "+norm);
+            return new LinkedHashSet<>(cached);
+        }
+        if(isSpaceBudgeted() && !revision_type.equals("-")) {
+            norm = norm.copy(); //the norm of the configuration keeps its space parameters
+            tuneSpaceParams(norm, revision_type, getCachedRelProp(traces, norm), traces);
+        }
         try {
             Constructor<DNFNorm> cons = normsTypes.get(normID).getConstructor(String.class, List.class, List.class, List.class, Random.class);
 
-            LinkedHashMap<String, Set<State>> states = getStates(traces, norm);
-
+            Set<DNFNorm> revised = null;
             switch(revision_type) {
                 case "strengthening":
                     System.out.println("Searching for strengthening of "+norm);
-                    return strengthenNorm(norm, cons, normID, states);
+                    revised = strengthenNorm(norm, cons, normID, getCachedRelProp(traces, norm));
 //                    return strengthenNorm(norm, cons, normID, TP, FP, TN, FN, P, N);
+                    break;
                 case "weakening":
                     System.out.println("Searching for weakening of "+norm);
-                    return weakenNorm(norm, cons, normID, states);
+                    revised = weakenNorm(norm, cons, normID, getCachedRelProp(traces, norm));
 //                return weakenNorm(norm, cons, normID, TP, FP, TN, FN, P, N);
+                    break;
                 case "alteration":
                     System.out.println("Searching for alterations of "+norm);
-                    return alterNorm(norm, cons, normID, states);
+                    revised = alterNorm(norm, cons, normID, getCachedRelProp(traces, norm));
 //                    return alterNorm(norm, cons, normID, TP, FP, TN, FN, P, N);
+                    break;
+                case "localsearch":
+                case "evolutionary":
+                    revised = getNeighbourNorms(norm, cons, normID, getCachedRelProp(traces, norm));
+                    break;
                 case "-":
                     /*Leave the norm as it is */
                     System.out.println("Leaving "+norm+" as it is.");
                     return new HashSet<>(List.of(norm));
             }
+            if(revised!=null) {
+                //the candidates are returned as cached (packed and unpacked), so they are in the same order when reused
+                cache.putCandidates(traces, norm, candidates_key, revised);
+                return new LinkedHashSet<>(cache.getCandidates(traces, norm, candidates_key, normID, r));
+            }
         } catch (NoSuchMethodException e) {
             e.printStackTrace();
         }
@@ -218,24 +1342,139 @@ public class DNR {
         return null;
     }
 
-    Set<DNFNorm> alterNorm(DNFNorm norm, Constructor<DNFNorm> cons, String normID, LinkedHashMap<String, Set<State>> states) {
+    String getCandidatesKey(DNFNorm norm, String revision_type) {
+        /**
+         * Returns the key of the candidates of norm in the cache, which depends on the space budgets if any (the space
+         * parameters being tuned to them), and on the space parameters of the norm otherwise
+         */
+        if(isSpaceBudgeted())
+            return revision_type+"/budget/"+spaceCandidateBudget+"/"+spaceTimeBudget;
+        return revision_type+"/"+norm.getSpaceParam(Constants.CONDITION)+"/"+norm.getSpaceParam(Constants.PROHIBITION)+"/"+norm.getSpaceParam(Constants.DEADLINE);
+    }
+
+    boolean isSpaceBudgeted() {
+        return spaceCandidateBudget>0 || spaceTimeBudget>0;
+    }
+
+    void tuneSpaceParams(DNFNorm norm, String revision_type, LinkedHashMap<String, Set<String>> prop, List<Trace> traces) {
+        /**
+         * Sets the space parameters of norm (see DNFNorm.getSpaceParam) so that the number of candidate norms of the
+         * revision fits the budget: at most spaceCandidateBudget candidates (if positive), and at most the candidates
+         * that can be scored in spaceTimeBudget ms (if positive), estimating the time to score a candidate as the time
+         * to evaluate norm on the traces (measured once per norm and dataset, so the budget does not change when the
+         * same norm is revised again).
+         * The number of candidates is estimated from the conjunctions that each component can get from the
+         * propositions of the states (i.e., without creating the norms), as the product over the components of the
+         * number of formulas (or their sum for the local search, which changes one component at a time).
+         * Starting from 1, the parameters of the components are increased in turn while the estimate fits the budget
+         * and a higher parameter gives more conjunctions, so with small datasets the search is not bounded at all
+         */
+        long budget = spaceCandidateBudget>0 ? spaceCandidateBudget : Long.MAX_VALUE;
+        if(spaceTimeBudget>0) {
+            Double ms_per_candidate = cache.getEvaluationTime(traces, norm);
+            if(ms_per_candidate==null) {
+                long start = System.nanoTime();
+                for(Trace t : traces)
+                    norm.isViol(t);
+                ms_per_candidate = Math.max((System.nanoTime()-start)/1000000.0, 0.001);
+                cache.putEvaluationTime(traces, norm, ms_per_candidate);
+            }
+            budget = Math.min(budget, (long) (spaceTimeBudget/ms_per_candidate));
+        }
+        String[] components = {Constants.CONDITION, Constants.PROHIBITION, Constants.DEADLINE};
+        long[] nr_conj = new long[components.length];
+        boolean[] saturated = new boolean[components.length];
+        boolean full = true;
+        for(int c=0; c<components.length; c++) {
+            norm.setSpaceParam(components[c], 1);
+            nr_conj[c] = getNrConjunctions(norm, revision_type, prop, components[c]);
+        }
+        boolean changed = true;
+        while(changed) {
+            changed = false;
+            for(int c=0; c<components.length; c++) {
+                if(saturated[c])
+                    continue;
+                int space_param = norm.getSpaceParam(components[c]);
+                norm.setSpaceParam(components[c], space_param+1);
+                long nr = getNrConjunctions(norm, revision_type, prop, components[c]);
+                long prev = nr_conj[c];
+                nr_conj[c] = nr;
+                if(nr==prev || space_param+1>MAX_SPACE_PARAM || estimateNrCandidates(revision_type, nr_conj)>budget) {
+                    if(nr!=prev)
+                        full = false; //some conjunctions are left out
+                    nr_conj[c] = prev;
+                    norm.setSpaceParam(components[c], space_param);
+                    saturated[c] = true;
+                }
+                else
+                    changed = true;
+            }
+        }
+        System.out.println("Space parameters for the "+revision_type+" of "+norm+": cond "+norm.getSpaceParam(Constants.CONDITION)+
+                ", proh "+norm.getSpaceParam(Constants.PROHIBITION)+", dead "+norm.getSpaceParam(Constants.DEADLINE)+
+                " ("+estimateNrCandidates(revision_type, nr_conj)+" candidates estimated, "+(full ? "full search" : "budget "+budget)+")");
+    }
+
+    long getNrConjunctions(DNFNorm norm, String revision_type, LinkedHashMap<String, Set<String>> prop, String component) {
+        /**
+         * Returns the number of conjunctions that the revision revision_type can use to build the formulas of component,
+         * counted without building them (see DNFNorm.countConj)
+         */
+        boolean more = !revision_type.equals("strengthening");
+        boolean less = !revision_type.equals("weakening");
+        if(component.equals(Constants.DEADLINE)) { //the deadline is revised in the opposite direction
+            boolean tmp = more;
+            more = less;
+            less = tmp;
+        }
+        String more_prop = component.equals(Constants.CONDITION) ? "CS" : (component.equals(Constants.PROHIBITION) ? "PS" : "DS");
+        String less_prop = component.equals(Constants.CONDITION) ? "OPS" : (component.equals(Constants.PROHIBITION) ? "IPS" : "CPS");
+        long nr_more = more ? norm.countConj(prop.get(more_prop), component, Constants.MORE_SPEC) : 0;
+        long nr_less = less ? norm.countConj(prop.get(less_prop), component, Constants.LESS_SPEC) : 0;
+        return nr_more>Long.MAX_VALUE-nr_less ? Long.MAX_VALUE : nr_more+nr_less;
+    }
+
+    static long estimateNrCandidates(String revision_type, long[] nr_conj) {
+        /**
+         * Estimates the number of candidate norms from the number of conjunctions of each component
+         * (each component can also keep its current formula)
+         */
+        if(isSearchStrategy(revision_type)) {
+            long sum = 0;
+            for(long nr : nr_conj)
+                sum = sum + nr;
+            return sum;
+        }
+        double product = 1.0;
+        for(long nr : nr_conj)
+            product = product*(nr+1);
+        return product>=Long.MAX_VALUE ? Long.MAX_VALUE : (long) product;
+    }
+
+    Set<DNFNorm> alterNorm(DNFNorm norm, Constructor<DNFNorm> cons, String normID, LinkedHashMap<String, Set<String>> prop) {
         /**
          * Function to synthesise alterations of norm norm
          */
         try {
             Set<DNFNorm> possibleAlterations = new HashSet<>();
-            Set<List<Conjunction>> new_possible_cond = norm.getMoreSpecificFormulas(norm.getCondition(), states.get("CS"), "cond");
-            new_possible_cond.addAll(norm.getLessSpecificFormulas(norm.getCondition(), states.get("OPS"), "cond"));
+            Set<List<Conjunction>> new_possible_cond = norm.getMoreSpecificFormulasFromProp(norm.getCondition(), prop.get("CS"), "cond");
+            new_possible_cond.addAll(norm.getLessSpecificFormulasFromProp(norm.getCondition(), prop.get("OPS"), "cond"));
 
-            Set<List<Conjunction>> new_possible_proh = norm.getMoreSpecificFormulas(norm.getProhibition(), states.get("PS"), "proh");
-            new_possible_proh.addAll(norm.getLessSpecificFormulas(norm.getProhibition(), states.get("IPS"), "proh"));
+            Set<List<Conjunction>> new_possible_proh = norm.getMoreSpecificFormulasFromProp(norm.getProhibition(), prop.get("PS"), "proh");
+            new_possible_proh.addAll(norm.getLessSpecificFormulasFromProp(norm.getProhibition(), prop.get("IPS"), "proh"));
 
-            Set<List<Conjunction>> new_possible_dead = norm.getMoreSpecificFormulas(norm.getDeadline(), states.get("DS"), "dead");
-            new_possible_dead.addAll(norm.getLessSpecificFormulas(norm.getDeadline(), states.get("CPS"), "dead"));
+            Set<List<Conjunction>> new_possible_dead = norm.getMoreSpecificFormulasFromProp(norm.getDeadline(), prop.get("DS"), "dead");
+            new_possible_dead.addAll(norm.getLessSpecificFormulasFromProp(norm.getDeadline(), prop.get("CPS"), "dead"));
 
             for(List<Conjunction> phi_c_1 : new_possible_cond) {
                 for(List<Conjunction> phi_p_1 : new_possible_proh) {
                     for(List<Conjunction> phi_d_1 : new_possible_dead) {
+                        if(!norm.isFeasible(phi_c_1, phi_p_1, phi_d_1)) {
+                            prunedCombinations++;
+                            continue;
+                        }
+                        instantiatedCombinations++;
                         DNFNorm n1 = cons.newInstance(normID, phi_c_1, phi_p_1, phi_d_1, r);
                         if(!n1.isEmpty()) {
                             possibleAlterations.add(n1);
@@ -252,20 +1491,74 @@ public class DNR {
 
     }
 
-    Set<DNFNorm> strengthenNorm(DNFNorm norm, Constructor<DNFNorm> cons, String normID, LinkedHashMap<String, Set<State>> states) {
+    Set<DNFNorm> getNeighbourNorms(DNFNorm norm, Constructor<DNFNorm> cons, String normID, LinkedHashMap<String, Set<String>> prop) {
         /**
-         * Function to synthesize strengthenings of the norm norm
+         * Function to synthesise the neighbours of norm norm used by the local search, i.e., the norms obtained by
+         * replacing only one of its components with one of the more or less specific formulas of the alteration, or
+         * both the condition and the prohibition when they only agree on the applicability if changed together
          */
         try {
-            Set<DNFNorm> possibleStrengthening = new HashSet<>();
-            Set<List<Conjunction>> less_spec_cond = norm.getLessSpecificFormulas(norm.getCondition(), states.get("OPS"), "cond");
-            Set<List<Conjunction>> less_spec_proh = norm.getLessSpecificFormulas(norm.getProhibition(), states.get("IPS"), "proh");
-            Set<List<Conjunction>> more_spec_dead = norm.getMoreSpecificFormulas(norm.getDeadline(), states.get("DS"), "dead");
+            Set<DNFNorm> neighbours = new HashSet<>();
+            Set<List<Conjunction>> new_possible_cond = norm.getMoreSpecificFormulasFromProp(norm.getCondition(), prop.get("CS"), "cond");
+            new_possible_cond.addAll(norm.getLessSpecificFormulasFromProp(norm.getCondition(), prop.get("OPS"), "cond"));
 
-            for(List<Conjunction> phi_c_1 : less_spec_cond) {
-                for(List<Conjunction> phi_p_1 : less_spec_proh) {
-                    for(List<Conjunction> phi_d_1 : more_spec_dead) {
-                        DNFNorm n1 = cons.newInstance(normID, phi_c_1, phi_p_1, phi_d_1, r);
+            Set<List<Conjunction>> new_possible_proh = norm.getMoreSpecificFormulasFromProp(norm.getProhibition(), prop.get("PS"), "proh");
+            new_possible_proh.addAll(norm.getLessSpecificFormulasFromProp(norm.getProhibition(), prop.get("IPS"), "proh"));
+
+            Set<List<Conjunction>> new_possible_dead = norm.getMoreSpecificFormulasFromProp(norm.getDeadline(), prop.get("DS"), "dead");
+            new_possible_dead.addAll(norm.getLessSpecificFormulasFromProp(norm.getDeadline(), prop.get("CPS"), "dead"));
+
+            ArrayList<List<List<Conjunction>>> moves = new ArrayList<>();
+            for(List<Conjunction> phi_c_1 : new_possible_cond)
+                moves.add(List.of(phi_c_1, norm.getProhibition(), norm.getDeadline()));
+            for(List<Conjunction> phi_p_1 : new_possible_proh)
+                moves.add(List.of(norm.getCondition(), phi_p_1, norm.getDeadline()));
+            for(List<Conjunction> phi_d_1 : new_possible_dead)
+                moves.add(List.of(norm.getCondition(), norm.getProhibition(), phi_d_1));
+            //the applicability of the condition and of the prohibition must agree, so changing it moves both
+            for(List<Conjunction> phi_c_1 : new_possible_cond)
+                if(!norm.isFeasible(phi_c_1, norm.getProhibition(), norm.getDeadline()))
+                    for(List<Conjunction> phi_p_1 : new_possible_proh)
+                        if(!norm.isFeasible(norm.getCondition(), phi_p_1, norm.getDeadline()))
+                            moves.add(List.of(phi_c_1, phi_p_1, norm.getDeadline()));
+            for(List<List<Conjunction>> m : moves) {
+                if(!norm.isFeasible(m.get(0), m.get(1), m.get(2))) {
+                    prunedCombinations++;
+                    continue;
+                }
+                instantiatedCombinations++;
+                DNFNorm n1 = cons.newInstance(normID, m.get(0), m.get(1), m.get(2), r);
+                if(!n1.isEmpty() && !n1.toString().equals(norm.toString())) {
+                    neighbours.add(n1);
+                }
+            }
+            return neighbours;
+        } catch(Exception e) {
+            System.out.println("ERROR IN CREATING A NEW INSTANCE OF NORM DYNAMICALLY during local search");
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    Set<DNFNorm> strengthenNorm(DNFNorm norm, Constructor<DNFNorm> cons, String normID, LinkedHashMap<String, Set<String>> prop) {
+        /**
+         * Function to synthesize strengthenings of the norm norm
+         */
+        try {
+            Set<DNFNorm> possibleStrengthening = new HashSet<>();
+            Set<List<Conjunction>> less_spec_cond = norm.getLessSpecificFormulasFromProp(norm.getCondition(), prop.get("OPS"), "cond");
+            Set<List<Conjunction>> less_spec_proh = norm.getLessSpecificFormulasFromProp(norm.getProhibition(), prop.get("IPS"), "proh");
+            Set<List<Conjunction>> more_spec_dead = norm.getMoreSpecificFormulasFromProp(norm.getDeadline(), prop.get("DS"), "dead");
+
+            for(List<Conjunction> phi_c_1 : less_spec_cond) {
+                for(List<Conjunction> phi_p_1 : less_spec_proh) {
+                    for(List<Conjunction> phi_d_1 : more_spec_dead) {
+                        if(!norm.isFeasible(phi_c_1, phi_p_1, phi_d_1)) {
+                            prunedCombinations++;
+                            continue;
+                        }
+                        instantiatedCombinations++;
+                        DNFNorm n1 = cons.newInstance(normID, phi_c_1, phi_p_1, phi_d_1, r);
                         if(!n1.isEmpty()) {
                             possibleStrengthening.add(n1);
                         }
@@ -280,19 +1573,24 @@ public class DNR {
         return null;
     }
 
-    Set<DNFNorm> weakenNorm(DNFNorm norm, Constructor<DNFNorm> cons, String normID, LinkedHashMap<String, Set<State>> states) {
+    Set<DNFNorm> weakenNorm(DNFNorm norm, Constructor<DNFNorm> cons, String normID, LinkedHashMap<String, Set<String>> prop) {
         /**
          * Function to synthesise weakenings of norm norm
          */
         try {
             Set<DNFNorm> possibleWeakening = new HashSet<>();
-            Set<List<Conjunction>> more_spec_cond = norm.getMoreSpecificFormulas(norm.getCondition(), states.get("CS"), "cond");
-            Set<List<Conjunction>> more_spec_proh = norm.getMoreSpecificFormulas(norm.getProhibition(), states.get("PS"), "proh");
-            Set<List<Conjunction>> less_spec_dead = norm.getLessSpecificFormulas(norm.getDeadline(), states.get("CPS"), "dead");
+            Set<List<Conjunction>> more_spec_cond = norm.getMoreSpecificFormulasFromProp(norm.getCondition(), prop.get("CS"), "cond");
+            Set<List<Conjunction>> more_spec_proh = norm.getMoreSpecificFormulasFromProp(norm.getProhibition(), prop.get("PS"), "proh");
+            Set<List<Conjunction>> less_spec_dead = norm.getLessSpecificFormulasFromProp(norm.getDeadline(), prop.get("CPS"), "dead");
             for(List<Conjunction> phi_c_1 : more_spec_cond) {
                 for(List<Conjunction> phi_p_1 : more_spec_proh) {
                     for(List<Conjunction> phi_d_1 : less_spec_dead) {
                         //create the new norm
+                        if(!norm.isFeasible(phi_c_1, phi_p_1, phi_d_1)) {
+                            prunedCombinations++;
+                            continue;
+                        }
+                        instantiatedCombinations++;
                         DNFNorm n1 = cons.newInstance(normID, phi_c_1, phi_p_1, phi_d_1, r);
                         if(!n1.isEmpty()) {
                             possibleWeakening.add(n1);
@@ -321,17 +1619,18 @@ public class DNR {
             conf_matrix.add(-1);
         }
         else {
-            int tp = (int) traces.stream().filter(t -> (t.getObjEval() && n.isViol(t) == -1)).count();
-            int fp = (int) traces.stream().filter(t -> (!t.getObjEval() && n.isViol(t) == -1)).count();
-            int tn = (int) traces.stream().filter(t -> (!t.getObjEval() && n.isViol(t) > -1)).count();
-            int fn = (int) traces.stream().filter(t -> (t.getObjEval() && n.isViol(t) > -1)).count();
-            conf_matrix.add(tp);
-            conf_matrix.add(fp);
-            conf_matrix.add(tn);
-            conf_matrix.add(fn);
+            conf_matrix.addAll(getNormConfusionMatrix(n, traces).toList());
         }
         return conf_matrix;
     }
+
+    ConfusionMatrix getNormConfusionMatrix(DNFNorm n, List<Trace> traces) {
+        /**
+         * Returns the confusion matrix of norm n, computed from its violation vector
+         */
+        EvaluationIndex index = cache.getIndex(traces);
+        return ConfusionMatrix.fromViolations(index, index.getViolations(n));
+    }
     
     ArrayList<Integer> getConfusionMatrices(Configuration c, int nr_norms, List<Trace> traces ) {
         /**
@@ -344,120 +1643,160 @@ public class DNR {
                 conf_matrices.addAll(getConfusionMatrix(null, traces));
         }
         else {
-            Iterator<Map.Entry<String, DNFNorm>> iter = c.getMap().entrySet().iterator();
-            while (iter.hasNext()) { //this loops for all simulation.norms
-                Map.Entry<String, DNFNorm> n_conf = iter.next();
-                conf_matrices.addAll(getConfusionMatrix(n_conf.getValue(), traces));
-            }
+            JointConfusionCube cube = getJointConfusionCube(c, traces);
+            for(int i=0; i<cube.getNrNorms(); i++) //this loops for all simulation.norms
+                conf_matrices.addAll(cube.getNormConfusionMatrix(i).toList());
         }
         return conf_matrices;
     }
 
-    ArrayList<Integer> getTwoLabelConfusionMatrix(Configuration c, List<Trace> traces ) {
+    JointConfusionCube getJointConfusionCube(Configuration c, List<Trace> traces) {
         /**
-         * Returns a two-labels confusion matrix which considers both norms (assumes 2 norms) at the same time
+         * Returns the joint confusion cube of the norms in configuration c (in the order of the configuration),
+         * computed from their violation vectors
          */
-        ArrayList<Integer> conf_matrix = new ArrayList<>();
-
-        if(c==null) {
-            conf_matrix.add(-1);
-            conf_matrix.add(-1);
-            conf_matrix.add(-1);
-            conf_matrix.add(-1);
-            conf_matrix.add(-1);
-            conf_matrix.add(-1);
-            conf_matrix.add(-1);
-            conf_matrix.add(-1);
-            return conf_matrix;
-        }
-
-        DNFNorm n1 = c.get(idMaxSpeedNorm);
-        DNFNorm n2 = c.get(idMinDistNorm);
-        //positive
-        //n1 ob
-        int pfc =  (int) traces.stream().filter(t -> (t.getObjEval() && n1.isViol(t)==-1 && n2.isViol(t)==-1)).count(); //positive fully correct
-        int ppc1 =  (int) traces.stream().filter(t -> (t.getObjEval() && n1.isViol(t)==-1 && n2.isViol(t)>-1)).count(); //positive partly correct (n1)
-        //n1 viol
-        int ppc2 =  (int) traces.stream().filter(t -> (t.getObjEval() && n1.isViol(t)>-1 && n2.isViol(t)==-1)).count(); //positive partly correct (n2)
-        int pfw =  (int) traces.stream().filter(t -> (t.getObjEval() && n1.isViol(t)>-1 && n2.isViol(t)>-1)).count(); //positive fully wrong
-        //negative
-        //n1 ob
-        int nfw =  (int) traces.stream().filter(t -> (!t.getObjEval() && n1.isViol(t)==-1 && n2.isViol(t)==-1)).count(); //negative fully wrong
-        int npc2 =  (int) traces.stream().filter(t -> (!t.getObjEval() && n1.isViol(t)==-1 && n2.isViol(t)>-1)).count(); //negative partly correct (n2)
-        //n1 viol
-        int npc1 =  (int) traces.stream().filter(t -> (!t.getObjEval() && n1.isViol(t)>-1 && n2.isViol(t)==-1)).count(); //negative partly correct (n1)
-        int nfc = (int)  traces.stream().filter(t -> (!t.getObjEval() && n1.isViol(t)>-1 && n2.isViol(t)>-1)).count(); //negative fully correct
-        conf_matrix.add(pfc);
-        conf_matrix.add(ppc1);
-        conf_matrix.add(ppc2);
-        conf_matrix.add(pfw);
-        conf_matrix.add(nfw);
-        conf_matrix.add(npc2);
-        conf_matrix.add(npc1);
-        conf_matrix.add(nfc);
+        EvaluationIndex index = cache.getIndex(traces);
+        return new JointConfusionCube(index, getViolations(c, index));
+    }
 
-        return conf_matrix;
+    ArrayList<Integer> getJointConfusionMatrix(Configuration c, int nr_norms, List<Trace> traces ) {
+        /**
+         * Returns a joint confusion matrix which considers all the norms at the same time, i.e., the number of
+         * positive and negative traces for every combination of violated norms (2^(nr_norms+1) elements, see
+         * JointConfusionCube.getColumnNames)
+         */
+        if(c==null)
+            return new ArrayList<>(Collections.nCopies(1 << (nr_norms+1), -1));
+        return getJointConfusionCube(c, traces).toList();
     }
 
     double getMultiLabelAccuracy(Configuration c, List<Trace> traces ) {
         /**
-         * Returns the multi-label accuracy for a given two-norms configuration
-         */
-        if(traces.size()>0) {
-            int n = c.getMap().size();
-            double ml_acc = 0.0;
-            for(Trace tr : traces) {
-                //the actual values
-                int obj_eval = tr.getObjEval()?1:0;
-                int [] y = new int[n];
-                for(int i=0; i<n;i++) y[i]=obj_eval;//the actual value for the classification, I repeat it n times, with n =nr simulation.norms
-
-                //the predicted values
-                int [] y_pred = new int[n];
-                Iterator<Map.Entry<String, DNFNorm>> iter = c.getMap().entrySet().iterator();
-                int i=0;
-                while (iter.hasNext()) { //this loops for all simulation.norms
-                    Map.Entry<String, DNFNorm> n_conf = iter.next();
-                    y_pred[i] = n_conf.getValue().isViol(tr)>-1?0:1; //if viol I give class 0, otherwise class 1
-                    i++;
-                }
-                int union = 0;
-                int inter = 0;
-                for(int j = 0; j < y.length; j++) {
-                    if (y[j] == 1 || y_pred[j] == 1)
-                        union++;
-                    if (y[j] == 1 && y_pred[j] == 1)
-                        inter++;
-                }
-                ml_acc = ml_acc + ((union > 0) ? (double)inter / (double)union : 1.0);
-            }
-            return ml_acc/(double)traces.size();
+         * Returns the multi-label accuracy for a given configuration: a positive trace scores the fraction of norms it
+         * does not violate, a negative trace scores 1 if it violates all norms and 0 otherwise
+         */
+        return getMultiLabelAccuracy(c, traces, null);
+    }
+
+    double getMultiLabelAccuracy(Configuration c, List<Trace> traces, BitSet mask) {
+        /**
+         * Returns the multi-label accuracy of a configuration w.r.t. the traces selected by mask (all of them if null).
+         * When the number of norms is a power of 2 the per-trace fractions are exact, and the accuracy is derived from
+         * the joint confusion cube of the norms; otherwise the scores are summed trace by trace, in the order of the
+         * traces, so that the result is the sum of getMultiLabelScore (as in racing) and ties are not flipped by
+         * rounding
+         */
+        EvaluationIndex index = cache.getIndex(traces);
+        return getMultiLabelAccuracy(index, getViolations(c, index), mask);
+    }
+
+    double getMultiLabelAccuracy(EvaluationIndex index, List<BitSet> viols, BitSet mask) {
+        /**
+         * Returns the multi-label accuracy of the norms with violation vectors viols w.r.t. the traces of index selected
+         * by mask (all of them if null), as above
+         */
+        int size = mask==null ? index.size() : mask.cardinality();
+        if(size==0)
+            return -1;
+        int n = viols.size();
+        if((n & (n-1))==0)
+            return mask==null ? new JointConfusionCube(index, viols).getMultiLabelAccuracy() : new JointConfusionCube(index, viols, mask).getMultiLabelAccuracy();
+        BitSet labels = index.getLabels();
+        double ml_acc = 0.0;
+        for(int t=mask==null ? 0 : mask.nextSetBit(0); t>=0 && t<index.size(); t=mask==null ? t+1 : mask.nextSetBit(t+1)) {
+            int obeyed = 0;
+            for(BitSet viol : viols)
+                if(!viol.get(t))
+                    obeyed++;
+            //same as getMultiLabelScore
+            if(labels.get(t))
+                ml_acc = ml_acc + (double) obeyed/n;
+            else
+                ml_acc = ml_acc + (obeyed == 0 ? 1.0 : 0.0);
         }
-        return -1;
+        return ml_acc/size;
     }
 
 
+    double getMultiLabelScore(Configuration c, Trace tr) {
+        /**
+         * Returns the contribution of trace tr to the multi-label accuracy of a configuration (a value between 0 and 1)
+         */
+        int n = c.getMap().size();
+        //the actual values
+        int obj_eval = tr.getObjEval()?1:0;
+        int [] y = new int[n];
+        for(int i=0; i<n;i++) y[i]=obj_eval;//the actual value for the classification, I repeat it n times, with n =nr simulation.norms
+
+        //the predicted values
+        int [] y_pred = new int[n];
+        Iterator<Map.Entry<String, DNFNorm>> iter = c.getMap().entrySet().iterator();
+        int i=0;
+        while (iter.hasNext()) { //this loops for all simulation.norms
+            Map.Entry<String, DNFNorm> n_conf = iter.next();
+            y_pred[i] = n_conf.getValue().isViol(tr)>-1?0:1; //if viol I give class 0, otherwise class 1
+            i++;
+        }
+        int union = 0;
+        int inter = 0;
+        for(int j = 0; j < y.length; j++) {
+            if (y[j] == 1 || y_pred[j] == 1)
+                union++;
+            if (y[j] == 1 && y_pred[j] == 1)
+                inter++;
+        }
+        return (union > 0) ? (double)inter / (double)union : 1.0;
+    }
+
+    double getNormQuality(String metric, EvaluationIndex index, BitSet viol) {
+        /**
+         * Returns the quality w.r.t. the metric metric of the norm with violation vector viol in index (0 with the
+         * metric random, as for the configurations)
+         */
+        if(metric.equals("random"))
+            return 0.0;
+        if(!ConfusionMatrix.isMetric(metric)) {
+            System.out.println("WARNING: metric not found.");
+            return -1.0;
+        }
+        if(index.size()==0)
+            return -1.0;
+        return ConfusionMatrix.fromViolations(index, viol).getMetric(metric);
+    }
+
     double getNormQuality(String metric, DNFNorm n, List<Trace> traces) {
         /**
-         * Returns the quality of norm n w.r.t. the metric metric
+         * Returns the quality of norm n w.r.t. the metric metric (one of ConfusionMatrix.METRICS), as a projection of
+         * its confusion matrix (0 with the metric random, as for the configurations)
          */
-        switch(metric) {
-            case "accuracy":
-                return getAccuracy(n,traces);
+        if(metric.equals("random"))
+            return 0.0;
+        if(!ConfusionMatrix.isMetric(metric)) {
+            System.out.println("WARNING: metric not found.");
+            return -1.0;
         }
-        System.out.println("WARNING: metric not found.");
-        return -1.0;
+        if(traces.isEmpty())
+            return -1.0;
+        return getNormConfusionMatrix(n, traces).getMetric(metric);
+    }
+
+    public LinkedHashMap<String, Double> getNormQualities(DNFNorm n, List<Trace> traces) {
+        /**
+         * Returns the quality of norm n w.r.t. all the metrics in ConfusionMatrix.METRICS, derived from a single
+         * confusion matrix
+         */
+        LinkedHashMap<String, Double> qualities = new LinkedHashMap<>();
+        ConfusionMatrix cm = getNormConfusionMatrix(n, traces);
+        for(String m : ConfusionMatrix.METRICS)
+            qualities.put(m, cm.getMetric(m));
+        return qualities;
     }
 
     double getAccuracy( DNFNorm n, List<Trace> traces ) {
         /**
          * Returns the accuracy of norm n
          */
-        if(traces.size()>0) {
-            double correct_traces = traces.stream().filter(t -> (t.getObjEval() && n.isViol(t)==-1) || (!t.getObjEval() && n.isViol(t)>-1)).count();
-            return correct_traces/traces.size();
-        }
-        return -1;
+        return getNormQuality("accuracy", n, traces);
     }
 
 
@@ -467,197 +1806,547 @@ public class DNR {
          */
         if(c==null)
             return -1.0;
-        double quality = 0.0;
         /* Case when I'm not interested in the selection step but only in the synthesis step*/
         if(metric.equals("random"))
-            return quality;
+            return 0.0;
+        return getConfigQuality(c, cache.getIndex(traces));
+    }
+
+    double getConfigQuality(Configuration c, EvaluationIndex index) {
+        /**
+         * Returns the quality of a configuration w.r.t. the traces of index, computed from the violation vectors of
+         * its norms. The quality is looked up by the violation vectors first, so configurations whose norms classify
+         * the traces as the ones of a configuration already scored (e.g., in a previous revision) are not scored again
+         */
+        if(c==null)
+            return -1.0;
+        if(metric.equals("random"))
+            return 0.0;
+        return getConfigQuality(index, getViolations(c, index));
+    }
+
+    double getConfigQuality(EvaluationIndex index, List<BitSet> viols) {
+        /**
+         * Returns the quality of the configuration whose norms have the violation vectors viols (in the order of the
+         * configuration) in index
+         */
+        if(metric.equals("random"))
+            return 0.0;
+        Double cached_quality = cache.getQuality(index, viols, metric);
+        if(cached_quality!=null) {
+            reusedConfigurations.incrementAndGet();
+            return cached_quality;
+        }
+        double quality;
         /*CASE MULTILABEL*/
         if(metric.equals("mlacc")) {
-            quality = getMultiLabelAccuracy(c, traces);
+            quality = getMultiLabelAccuracy(index, viols, null);
         }
         else { /*this is the case for the normal metrics, like accuracy, f1, etc.*/
-            Iterator<Map.Entry<String, DNFNorm>> iter = c.getMap().entrySet().iterator();
-            while (iter.hasNext()) { //loops for all simulation.norms
-                Map.Entry<String, DNFNorm> n_conf = iter.next(); //get the norm
-                double norm_quality = getNormQuality(metric, n_conf.getValue(), traces); //calculate the quality
-                quality = quality + norm_quality;
-            }
-            if(c.getMap().size()>0) { //if there is more than one norm I calculate the final quality as the average (so I just divide by the number)
-                quality = quality/c.getMap().size();
-            }
+            quality = getMeanNormQuality(index, viols, metric);
         }
+        cache.putQuality(index, viols, metric, quality);
+        scoredConfigurations.incrementAndGet();
         return quality;
     }
 
-    public LinkedHashMap <String, ArrayList<String>> evalConfiguration(int nr_norms, Configuration config, ArrayList<Trace> labeledTraces, boolean traintestsplit, boolean independent_set_test, ArrayList<Trace> independent_labeledTraces, boolean twoLabelConfMatr) {
+    List<BitSet> getViolations(Configuration c, EvaluationIndex index) {
         /**
-         * Function that evaluates a configuration of norms w.r.t. a labeled dataset of traces.
-         * It returns an arraylist of strings, where each string contains a representation of the confusion matrices for the norms
+         * Returns the violation vectors of the norms of configuration c, in the order of the configuration
          */
-        ArrayList<Trace> train_traces = labeledTraces;
-        ArrayList<Trace> test_traces = labeledTraces;
-        if(traintestsplit) {
-            Collections.shuffle(labeledTraces);
-            int train_size = (int) Math.round(labeledTraces.size() * 0.75);
-            train_traces = new ArrayList<>(labeledTraces.subList(0, train_size));
-            test_traces = new ArrayList<>(labeledTraces.subList(train_size, labeledTraces.size()));
+        ArrayList<BitSet> viols = new ArrayList<>(c.getMap().size());
+        for(DNFNorm norm : c.getNorms())
+            viols.add(index.getViolations(norm));
+        return viols;
+    }
+
+    double getMeanNormQuality(EvaluationIndex index, List<BitSet> viols, String metric) {
+        /**
+         * Returns the average quality w.r.t. the metric metric of the norms with violation vectors viols (the same
+         * as getMeanNormQuality on their configuration)
+         */
+        double quality = 0.0;
+        for(BitSet viol : viols)
+            quality = quality + getNormQuality(metric, index, viol);
+        if(viols.size()>0)
+            quality = quality/viols.size();
+        return quality;
+    }
+
+    double getMeanNormQuality(Configuration c, List<Trace> traces, String metric) {
+        /**
+         * Returns the average quality of the norms of a configuration w.r.t. the metric metric
+         */
+        double quality = 0.0;
+        Iterator<Map.Entry<String, DNFNorm>> iter = c.getMap().entrySet().iterator();
+        while (iter.hasNext()) { //loops for all simulation.norms
+            Map.Entry<String, DNFNorm> n_conf = iter.next(); //get the norm
+            quality = quality + getCachedNormQuality(n_conf.getValue(), traces, metric);
         }
-        else {
-            if(independent_set_test) {
-                test_traces = independent_labeledTraces;
+        if(c.getMap().size()>0) { //if there is more than one norm I calculate the final quality as the average (so I just divide by the number)
+            quality = quality/c.getMap().size();
+        }
+        return quality;
+    }
+
+    double getCachedNormQuality(DNFNorm n, List<Trace> traces, String metric) {
+        /**
+         * Returns the quality of norm n w.r.t. the metric metric, computing it only the first time
+         */
+        Double norm_quality = cache.getQuality(traces, n, metric); //the quality, if already calculated
+        if(norm_quality==null) {
+            norm_quality = getNormQuality(metric, n, traces); //calculate the quality
+            cache.putQuality(traces, n, metric, norm_quality);
+        }
+        return norm_quality;
+    }
+
+    double[] getTraceScores(Configuration c, List<Trace> traces) {
+        /**
+         * Returns the score of every trace for configuration c, computed from the violation vectors of its norms, so
+         * that the quality of c is their average: the fraction of norms classifying the trace correctly with metric
+         * accuracy, and the contribution of the trace to the multi-label accuracy with metric mlacc
+         */
+        EvaluationIndex index = cache.getIndex(traces);
+        int[] obeyed = new int[index.size()];
+        for(DNFNorm norm : c.getNorms()) {
+            BitSet viol = index.getViolations(norm);
+            for(int t=viol.nextClearBit(0); t<index.size(); t=viol.nextClearBit(t+1))
+                obeyed[t]++;
+        }
+        int nr_norms = c.getMap().size();
+        BitSet labels = index.getLabels();
+        double[] scores = new double[index.size()];
+        for(int t=0; t<index.size(); t++) {
+            boolean positive = labels.get(t);
+            if(nr_norms==0)
+                scores[t] = 1.0;
+            else if(metric.equals("mlacc"))
+                scores[t] = positive ? (double) obeyed[t]/nr_norms : (obeyed[t]==0 ? 1.0 : 0.0);
+            else
+                scores[t] = (double) (positive ? obeyed[t] : nr_norms-obeyed[t])/nr_norms;
+        }
+        return scores;
+    }
+
+    List<double[]> getQualityIntervals(List<Configuration> configs, List<Trace> traces, BitSet mask) {
+        /**
+         * Returns the bootstrap confidence interval (lower and upper bound) of the quality of every configuration
+         * w.r.t. the traces (only the ones selected by mask, if not null), computed with bootstrapResamples resamples
+         * of the traces in a single pass (see PoissonBootstrap). The weights of the resamples are drawn from
+         * bootstrapSeed once per dataset size and kept in bootstraps, so they are the same for all the configurations
+         * evaluated on datasets of the same size, across calls.
+         * Only accuracy and mlacc are supported, for the other metrics (and for null configurations) the interval is
+         * (-1,-1). Returns an empty list if bootstrapResamples is 0
+         */
+        List<double[]> intervals = new ArrayList<>();
+        if(bootstrapResamples<=0)
+            return intervals;
+        int size = mask==null ? traces.size() : mask.cardinality();
+        boolean supported = (metric.equals("accuracy") || metric.equals("mlacc")) && size>0;
+        PoissonBootstrap bootstrap = null;
+        if(supported) {
+            bootstrap = bootstraps.get(size);
+            if(bootstrap==null) {
+                bootstrap = new PoissonBootstrap(size, bootstrapResamples, bootstrapSeed);
+                bootstraps.put(size, bootstrap);
             }
         }
-        LinkedHashMap <String, ArrayList<String>> eval = new LinkedHashMap<>();
-        ArrayList<String> l = new ArrayList<>();
-        /** CONFIG **/
-        /** (1) the quality of the config on the train traces **/
-        l.add(getConfigQuality(config, train_traces)+""); //1element
-        if (nr_norms == 2) {
-            if (twoLabelConfMatr) {
-                for (int v : getTwoLabelConfusionMatrix(config, train_traces)) //8elements in total
-                    l.add(v + "");
-            } else {
-                for (int v : getConfusionMatrices(config, nr_norms, train_traces)) //4elements for each norm
-                    l.add(v + "");
+        ArrayList<double[]> scores = new ArrayList<>();
+        for(Configuration c : configs) {
+            if(supported && c!=null) {
+                double[] all_scores = getTraceScores(c, traces);
+                if(mask==null)
+                    scores.add(all_scores);
+                else {
+                    double[] masked_scores = new double[size];
+                    int i = 0;
+                    for(int t=mask.nextSetBit(0); t>=0; t=mask.nextSetBit(t+1))
+                        masked_scores[i++] = all_scores[t];
+                    scores.add(masked_scores);
+                }
             }
         }
-        else {
-            for(int v : getConfusionMatrix(config.get("MSN"), train_traces))
-                l.add(v+"");
-        }
-        /** (2) the quality of the config on the test traces **/
-        l.add(getConfigQuality(config, test_traces)+"");
-        if (nr_norms == 2) {
-            if (twoLabelConfMatr) {
-                for (int v : getTwoLabelConfusionMatrix(config, test_traces)) //8elements in total
-                    l.add(v + "");
-            } else {
-                for (int v : getConfusionMatrices(config,nr_norms, test_traces)) //4elements for each norm
-                    l.add(v + "");
-            }
-        } else {
-            for(int v : getConfusionMatrix(config.get("MSN"), test_traces))
-                l.add(v+"");
-        }
-        //putting everything in the eval map that associates it with the metric
-        eval.put(metric, l);
-        return eval;
+        Iterator<double[]> computed = supported ? bootstrap.getIntervals(scores, bootstrapConfidence).iterator() : null;
+        for(Configuration c : configs)
+            intervals.add(supported && c!=null ? computed.next() : new double[]{-1, -1});
+        return intervals;
     }
 
+    void addQuality(ArrayList<String> l, double quality, List<double[]> intervals, int i) {
+        /**
+         * Adds to l the quality of a configuration, followed by the bounds of its confidence interval (the i-th of
+         * intervals) if the bootstrap is enabled
+         */
+        l.add(quality+"");
+        if(bootstrapResamples>0) {
+            l.add(intervals.get(i)[0]+"");
+            l.add(intervals.get(i)[1]+"");
+        }
+    }
 
-    public LinkedHashMap <String, ArrayList<String>> evalConfigurations(int nr_norms, Configuration initConfig, Configuration revConfig, ArrayList<Trace> labeledTraces, boolean traintestsplit, boolean independent_set_test, ArrayList<Trace> independent_labeledTraces, boolean twoLabelConfMatr) {
+    double getConfigQuality(Configuration c, List<Trace> traces, BitSet mask) {
         /**
-         * Function that compares two different configurations
+         * Returns the quality of a configuration w.r.t. the traces selected by mask, computed from the joint confusion
+         * cube of its norms over the mask (the same as getConfigQuality on a copy of the selected traces)
          */
-        ArrayList<Trace> train_traces = labeledTraces;
-        ArrayList<Trace> test_traces = labeledTraces;
-        if(traintestsplit) {
-            Collections.shuffle(labeledTraces);
-            int train_size = (int) Math.round(labeledTraces.size() * 0.75);
-            train_traces = new ArrayList<>(labeledTraces.subList(0, train_size));
-            test_traces = new ArrayList<>(labeledTraces.subList(train_size, labeledTraces.size()));
+        if(c==null)
+            return -1.0;
+        if(metric.equals("random"))
+            return 0.0;
+        if(metric.equals("mlacc"))
+            return getMultiLabelAccuracy(c, traces, mask);
+        JointConfusionCube cube = getJointConfusionCube(c, traces, mask);
+        if(!ConfusionMatrix.isMetric(metric)) {
+            System.out.println("WARNING: metric not found.");
+            return -1.0;
         }
-        else {
-            if(independent_set_test) {
-                test_traces = independent_labeledTraces;
+        double quality = 0.0;
+        for(int i=0; i<cube.getNrNorms(); i++)
+            quality = quality + cube.getNormConfusionMatrix(i).getMetric(metric);
+        if(cube.getNrNorms()>0)
+            quality = quality/cube.getNrNorms();
+        return quality;
+    }
+
+    JointConfusionCube getJointConfusionCube(Configuration c, List<Trace> traces, BitSet mask) {
+        /**
+         * Returns the joint confusion cube of the norms in configuration c w.r.t. the traces selected by mask
+         */
+        EvaluationIndex index = cache.getIndex(traces);
+        return new JointConfusionCube(index, getViolations(c, index), mask);
+    }
+
+    void addConfusionMatrices(ArrayList<String> l, int nr_norms, Configuration c, List<Trace> traces, BitSet mask, boolean twoLabelConfMatr) {
+        /**
+         * Adds to l the confusion matrices of configuration c w.r.t. the traces (only the ones selected by mask, if not
+         * null): the joint confusion matrix (2^(nr_norms+1) elements) or the confusion matrix of every norm (4 elements
+         * each) with more than one norm, otherwise the confusion matrix of the norm MSN. All -1 if c is null
+         */
+        ArrayList<Integer> conf_matrices;
+        if(mask==null) {
+            if (nr_norms > 1)
+                conf_matrices = twoLabelConfMatr ? getJointConfusionMatrix(c, nr_norms, traces) : getConfusionMatrices(c, nr_norms, traces);
+            else
+                conf_matrices = getConfusionMatrix(c==null ? null : c.get("MSN"), traces);
+        }
+        else if(c==null)
+            conf_matrices = new ArrayList<>(Collections.nCopies(nr_norms > 1 && twoLabelConfMatr ? 1 << (nr_norms+1) : 4*nr_norms, -1));
+        else if(nr_norms > 1) {
+            JointConfusionCube cube = getJointConfusionCube(c, traces, mask);
+            if(twoLabelConfMatr)
+                conf_matrices = cube.toList();
+            else {
+                conf_matrices = new ArrayList<>();
+                for(int i=0; i<cube.getNrNorms(); i++)
+                    conf_matrices.addAll(cube.getNormConfusionMatrix(i).toList());
             }
         }
+        else {
+            EvaluationIndex index = cache.getIndex(traces);
+            DNFNorm msnnorm = c.get("MSN");
+            conf_matrices = msnnorm==null ? getConfusionMatrix(null, traces) : ConfusionMatrix.fromViolations(index, index.getViolations(msnnorm), mask).toList();
+        }
+        for(int v : conf_matrices)
+            l.add(v+"");
+    }
 
-        LinkedHashMap <String, ArrayList<String>> eval = new LinkedHashMap<>();
+    ArrayList<String> evalConfigurations(int nr_norms, List<Configuration> configs, List<Trace> train_traces, BitSet train_mask, List<Trace> test_traces, BitSet test_mask, boolean twoLabelConfMatr) {
+        /**
+         * Returns, for every configuration, its quality (followed by its confidence interval, if the bootstrap is
+         * enabled) and confusion matrices on the train traces and then on the test traces (only the ones selected by the
+         * masks, if not null).
+         * A null configuration after the first one (no revised configuration found) takes the results of the previous
+         * configuration, with its quality on the test traces in place of the one on the train traces and the confusion
+         * matrices of every norm
+         */
+        //the confidence intervals of all the configurations are computed together
+        List<double[]> train_intervals = getQualityIntervals(configs, train_traces, train_mask);
+        List<double[]> test_intervals = getQualityIntervals(configs, test_traces, test_mask);
         ArrayList<String> l = new ArrayList<>();
-        /**INITIAL CONFIG **/
-        DNFNorm msnnorm = null;
-        if(initConfig!=null) {
-            msnnorm = initConfig.get("MSN");
-        }
-        /** (1) the quality of the initial config on the train traces **/
-        l.add(getConfigQuality(initConfig, train_traces) + ""); //1element
-        if (nr_norms == 2) {
-            if (twoLabelConfMatr) {
-                for (int v : getTwoLabelConfusionMatrix(initConfig, train_traces)) //8elements in total
-                    l.add(v + "");
-            } else {
-                for (int v : getConfusionMatrices(initConfig, nr_norms, train_traces)) //4elements for each norm
-                    l.add(v + "");
-            }
-        } else {
-            for (int v : getConfusionMatrix(msnnorm, train_traces))
-                l.add(v + "");
-        }
-        /** (2) the quality of the initial config on the test traces **/
-        l.add(getConfigQuality(initConfig, test_traces) + "");
-        if (nr_norms == 2) {
-            if (twoLabelConfMatr) {
-                for (int v : getTwoLabelConfusionMatrix(initConfig, test_traces)) //8elements in total
-                    l.add(v + "");
-            } else {
-                for (int v : getConfusionMatrices(initConfig,nr_norms, test_traces)) //4elements for each norm
-                    l.add(v + "");
-            }
-        } else {
-            for (int v : getConfusionMatrix(msnnorm, test_traces))
-                l.add(v + "");
-        }
-
-
-        /**REVISED CONFIG **/
-        /** (3) the quality of the new config on the train traces **/
-        if(revConfig != null) {
-            l.add(getConfigQuality(revConfig, train_traces) + ""); //here I use the test_traces
-            if (nr_norms == 2) {
-                if (twoLabelConfMatr) {
-                    for (int v : getTwoLabelConfusionMatrix(revConfig, train_traces)) //8elements in total
-                        l.add(v + "");
-                } else {
-                    for (int v : getConfusionMatrices(revConfig, nr_norms,train_traces)) //4elements for each norm
-                        l.add(v + "");
-                }
-            } else {
-                for (int v : getConfusionMatrix(revConfig.get("MSN"), train_traces))
-                    l.add(v + "");
+        for(int i=0; i<configs.size(); i++) {
+            Configuration c = configs.get(i);
+            if(c==null && i>0) {
+                Configuration prev = configs.get(i-1);
+                double test_quality = test_mask==null ? getConfigQuality(prev, test_traces) : getConfigQuality(prev, test_traces, test_mask);
+                addQuality(l, test_quality, test_intervals, i-1);
+                addConfusionMatrices(l, nr_norms, prev, train_traces, train_mask, false);
+                addQuality(l, test_quality, test_intervals, i-1);
+                addConfusionMatrices(l, nr_norms, prev, test_traces, test_mask, false);
+                continue;
             }
+            addQuality(l, train_mask==null ? getConfigQuality(c, train_traces) : getConfigQuality(c, train_traces, train_mask), train_intervals, i);
+            addConfusionMatrices(l, nr_norms, c, train_traces, train_mask, twoLabelConfMatr);
+            addQuality(l, test_mask==null ? getConfigQuality(c, test_traces) : getConfigQuality(c, test_traces, test_mask), test_intervals, i);
+            addConfusionMatrices(l, nr_norms, c, test_traces, test_mask, twoLabelConfMatr);
         }
-        else { /** (or the same quality of the initial config if no new config is found) **/
-            l.add(getConfigQuality(initConfig, test_traces)+"");
-            if (nr_norms == 2) {
-                for (int v : getConfusionMatrices(initConfig, nr_norms,train_traces))
-                    l.add(v + "");
-            }
-            else
-                for(int v : getConfusionMatrix(msnnorm, train_traces))
-                    l.add(v+"");
-        }
-        /** (4) the quality of the new config on the test traces (or the same quality of the initial config if no new config is found) **/
-        if(revConfig != null) {
-            l.add(getConfigQuality(revConfig, test_traces)+""); //here I use the test_traces
-            if (nr_norms == 2) {
-                if (twoLabelConfMatr) {
-                    for (int v : getTwoLabelConfusionMatrix(revConfig, test_traces)) //8elements in total
-                        l.add(v + "");
-                } else {
-                    for (int v : getConfusionMatrices(revConfig, nr_norms,test_traces)) //4elements for each norm
-                        l.add(v + "");
-                }
-            } else {
-                for(int v : getConfusionMatrix(revConfig.get("MSN"), test_traces))
-                    l.add(v+"");
+        return l;
+    }
+
+    LinkedHashMap <String, ArrayList<String>> evalConfigurations(int nr_norms, List<Configuration> configs, ArrayList<Trace> labeledTraces, boolean traintestsplit, boolean independent_set_test, ArrayList<Trace> independent_labeledTraces, boolean twoLabelConfMatr) {
+        /**
+         * Evaluates the configurations on the train and test traces, associating the result with the metric.
+         * With traintestsplit, the labeled traces are split into folds (see getEvaluationFolds) and there is a result
+         * per fold, associated with the metric followed by FOLD_SUFFIX and the fold number (see getFold); otherwise
+         * both train and test traces are the labeled traces, or the test traces are the independent ones if
+         * independent_set_test.
+         * The folds are masks over the labeled traces, which are not modified, so the violation vectors of the norms
+         * are computed once for all the folds
+         */
+        LinkedHashMap <String, ArrayList<String>> eval = new LinkedHashMap<>();
+        if(traintestsplit) {
+            TraceFolds folds = getEvaluationFolds(labeledTraces.size());
+            for(int f=0; f<folds.size(); f++) {
+                eval.put(metric+FOLD_SUFFIX+f, evalConfigurations(nr_norms, configs, labeledTraces, folds.getTrain(f), labeledTraces, folds.getTest(f), twoLabelConfMatr));
             }
         }
         else {
-            l.add(getConfigQuality(initConfig, test_traces)+"");
-            if (nr_norms == 2) {
-                for (int v : getConfusionMatrices(initConfig, nr_norms,test_traces))
-                    l.add(v + "");
-            }
-            else
-                for(int v : getConfusionMatrix(msnnorm, test_traces))
-                    l.add(v+"");
+            ArrayList<Trace> test_traces = independent_set_test ? independent_labeledTraces : labeledTraces;
+            eval.put(metric, evalConfigurations(nr_norms, configs, labeledTraces, null, test_traces, null, twoLabelConfMatr));
         }
-         //putting everything in the eval map that associates it with the metric
-        eval.put(metric, l);
         return eval;
     }
 
+    public static String getFold(String key) {
+        /**
+         * Returns the fold number of a result of evalConfigurations, or "-" if the result is not of a fold
+         */
+        int pos = key.lastIndexOf(FOLD_SUFFIX);
+        return pos<0 ? "-" : key.substring(pos+FOLD_SUFFIX.length());
+    }
+
+    TraceFolds getEvaluationFolds(int size) {
+        /**
+         * Returns the folds of the evaluation with train/test split (see setEvaluation), drawn from evaluationRandom
+         */
+        switch(evaluationMode) {
+            case "kfold":
+                return TraceFolds.kFold(size, evaluationFolds, evaluationRepeats, evaluationRandom);
+            case "repeated":
+                return TraceFolds.split(size, EVALUATION_TRAIN_FRACTION, evaluationRepeats, evaluationRandom);
+            default:
+                if(!evaluationMode.equals("split"))
+                    System.out.println("WARNING: evaluation mode "+evaluationMode+" not found, using a single split.");
+                return TraceFolds.split(size, EVALUATION_TRAIN_FRACTION, 1, evaluationRandom);
+        }
+    }
+
+    public LinkedHashMap <String, ArrayList<String>> evalConfiguration(int nr_norms, Configuration config, ArrayList<Trace> labeledTraces, boolean traintestsplit, boolean independent_set_test, ArrayList<Trace> independent_labeledTraces, boolean twoLabelConfMatr) {
+        /**
+         * Function that evaluates a configuration of norms w.r.t. a labeled dataset of traces.
+         * It returns an arraylist of strings, where each string contains a representation of the confusion matrices for the norms
+         */
+        return evalConfigurations(nr_norms, Collections.singletonList(config), labeledTraces, traintestsplit, independent_set_test, independent_labeledTraces, twoLabelConfMatr);
+    }
+
+    public LinkedHashMap <String, ArrayList<String>> evalConfigurations(int nr_norms, Configuration initConfig, Configuration revConfig, ArrayList<Trace> labeledTraces, boolean traintestsplit, boolean independent_set_test, ArrayList<Trace> independent_labeledTraces, boolean twoLabelConfMatr) {
+        /**
+         * Function that compares two different configurations. If no revised configuration is found (revConfig null),
+         * its results are the quality of the initial configuration on the test traces and the confusion matrices of its
+         * norms (see evalConfigurations)
+         */
+        return evalConfigurations(nr_norms, Arrays.asList(initConfig, revConfig), labeledTraces, traintestsplit, independent_set_test, independent_labeledTraces, twoLabelConfMatr);
+    }
+
+    public long getPrunedCombinations() {
+        /**
+         * Returns the number of combinations of components discarded before creating the norm in the last synthesis step
+         */
+        return prunedCombinations;
+    }
+
+    public long getInstantiatedCombinations() {
+        /**
+         * Returns the number of combinations of components for which a norm was created in the last synthesis step
+         */
+        return instantiatedCombinations;
+    }
+
+    public long getScoredConfigurations() {
+        /**
+         * Returns the number of configurations scored so far
+         */
+        return scoredConfigurations.get();
+    }
+
+    public long getReusedConfigurations() {
+        /**
+         * Returns the number of times the quality of a configuration already scored has been reused so far
+         */
+        return reusedConfigurations.get();
+    }
+
+    public boolean isDeterministic(String revStrategy) {
+        /**
+         * Determines whether revising the same configuration w.r.t. the same traces with revStrategy always gives the
+         * same configuration, i.e., whether a configuration that revises to itself is a fixpoint of the repeated
+         * revision: this is the case without Monte Carlo, randomised search and time budgets
+         */
+        return samples==-1 && !isSearchStrategy(revStrategy) && revisionTimeBudget<=0 && spaceTimeBudget<=0;
+    }
+
+    public void clearCache() {
+        /**
+         * Empties the cache of DNR, e.g., if the content of a dataset of traces already used has changed
+         */
+        cache.clear();
+    }
+
+    public void setParallelism(int parallelism) {
+        /**
+         * Sets the number of threads used to score the configurations in the selection step (1 means sequential)
+         */
+        this.parallelism = parallelism;
+    }
+
+    public void setSelectionMode(String selectionMode) {
+        /**
+         * Sets how the configurations are selected: "all" scores all of them, "bounded" returns only the best
+         * selectionTopK of them, without scoring the ones that cannot be among them, "sequential" (with Monte Carlo)
+         * samples them without replacement until the best one is unlikely to change, "racing" scores on all the traces
+         * only the configurations that are still competitive on a subsample of the traces, "adaptive" (with Monte
+         * Carlo) samples the candidates of each norm with weights learned from the configurations scored so far,
+         * "pareto" returns the configurations not dominated w.r.t. quality, restrictiveness, CO2 and travel time
+         */
+        this.selectionMode = selectionMode;
+    }
+
+    public void setSequentialStopping(double epsilon, double delta) {
+        /**
+         * Sets the stopping rule of the sequential Monte Carlo selection: sampling stops when, with probability at
+         * least 1-delta, the best sampled configuration is among the best epsilon fraction of the combinations
+         */
+        this.sequentialEpsilon = epsilon;
+        this.sequentialDelta = delta;
+    }
+
+    public void setRacing(int initialSample, double delta) {
+        /**
+         * Sets the size of the first subsample of traces of the racing selection, and the probability delta that it
+         * drops a configuration that should have been selected
+         */
+        this.racingInitialSample = initialSample;
+        this.racingDelta = delta;
+    }
+
+    public void setAdaptiveSampling(int batchSize, double elite, double smoothing, double exploration) {
+        /**
+         * Sets the number of samples drawn with the same weights, the fraction of the best samples of a batch used to
+         * update the weights, how much the weights move towards the frequencies of the candidates in them, and the
+         * fraction of the probability of drawing a candidate spread uniformly over all candidates
+         */
+        this.adaptiveBatchSize = batchSize;
+        this.adaptiveElite = elite;
+        this.adaptiveSmoothing = smoothing;
+        this.adaptiveExploration = exploration;
+    }
+
+    public void setSelectionTimeBudget(long selectionTimeBudget) {
+        this.selectionTimeBudget = selectionTimeBudget;
+    }
+
+    public void setSelectionTopK(int selectionTopK) {
+        /**
+         * Sets how many configurations (the best ones) are returned by the selection step
+         */
+        this.selectionTopK = selectionTopK;
+    }
+
+    public void setKeepAllConfigurations(boolean keepAllConfigurations) {
+        /**
+         * If true, the selection step returns all the configurations scored (e.g., to analyse the synthesised
+         * configurations or pick one at random), and not only the best selectionTopK. The bounded selection then ranks all
+         * the configurations, as none can be discarded
+         */
+        this.keepAllConfigurations = keepAllConfigurations;
+    }
+
+    int getRankingSize() {
+        return keepAllConfigurations ? Integer.MAX_VALUE : selectionTopK;
+    }
+
+    public void setLocalSearch(int iterations, int patience, int tabuSize, int restarts) {
+        /**
+         * Sets the maximum number of moves of the local search, the number of moves without improvement after which
+         * it stops, the number of configurations recently visited that are tabu, and the number of restarts
+         */
+        this.localSearchIterations = iterations;
+        this.localSearchPatience = patience;
+        this.localSearchTabuSize = tabuSize;
+        this.localSearchRestarts = restarts;
+    }
+
+    public void setSpaceBudget(long candidateBudget, long timeBudget) {
+        /**
+         * Sets the budgets to which the space parameters of the norms are tuned before revising them: the maximum
+         * number of candidate norms per norm, and the time (in ms) to score them (0 for no budget). With no budget
+         * the space parameters of the norms are left as they are
+         */
+        this.spaceCandidateBudget = candidateBudget;
+        this.spaceTimeBudget = timeBudget;
+    }
+
+    public void setRevisionTimeBudget(long revisionTimeBudget) {
+        /**
+         * Sets the time budget (in ms) of runDNR, which then returns the best configuration found within the budget
+         * (see runAnytimeDNR). With 0 (the default) runDNR runs to completion
+         */
+        this.revisionTimeBudget = revisionTimeBudget;
+    }
+
+    public void setEvolutionary(int population, int generations, int elite, double mutationRate, long seed) {
+        /**
+         * Sets the population size, the number of generations (the budget), the number of best configurations kept
+         * in every generation, the probability of mutating a child, and the seed of the evolutionary revision
+         * (-1 to use the random generator of DNR)
+         */
+        this.evolutionaryPopulation = population;
+        this.evolutionaryGenerations = generations;
+        this.evolutionaryElite = elite;
+        this.evolutionaryMutationRate = mutationRate;
+        this.evolutionarySeed = seed;
+    }
+
+    public void setBootstrap(int resamples, double confidence) {
+        /**
+         * Sets the number of Poisson bootstrap resamples (0 to disable it) and the confidence level of the intervals
+         * of the quality of the configurations evaluated, which are then added after every quality in the results of
+         * evalConfiguration and evalConfigurations. Supported only with metrics accuracy and mlacc
+         */
+        if(resamples>0 && !metric.equals("accuracy") && !metric.equals("mlacc"))
+            System.out.println("WARNING: bootstrap not supported for metric "+metric+", the confidence intervals will be (-1,-1).");
+        if(resamples!=bootstrapResamples)
+            bootstraps.clear();
+        this.bootstrapResamples = resamples;
+        this.bootstrapConfidence = confidence;
+    }
+
+    public void setEvaluation(String evaluationMode, int folds, int repeats) {
+        /**
+         * Sets how the configurations are evaluated with train/test split: "split" uses a single random split (75% of
+         * the traces for training), "repeated" repeats random splits repeats times, "kfold" repeats a random k-fold
+         * partition (with k=folds) repeats times. Every fold gives a separate result
+         */
+        this.evaluationMode = evaluationMode;
+        this.evaluationFolds = folds;
+        this.evaluationRepeats = repeats;
+    }
+
+    public void setEvaluationSeed(long seed) {
+        /**
+         * Sets the seed of the random generator of the folds of the evaluation with train/test split, which is
+         * independent of the random generator of DNR
+         */
+        this.evaluationSeed = seed;
+        this.evaluationRandom = new Random(seed);
+    }
+
+    public void setDedup(boolean dedup) {
+        /**
+         * Enables the deduplication of the candidate norms by violation signature after the synthesis step
+         */
+        this.dedup = dedup;
+    }
 
     public void setMetric(String metric) {
         /**
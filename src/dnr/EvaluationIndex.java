@@ -0,0 +1,207 @@
+package dnr;
+
+import simulation.Constants;
+import simulation.DNFNorm;
+import simulation.PackedHighwayNorm;
+import simulation.State;
+import simulation.Trace;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class EvaluationIndex {
+    /**
+     * Class indexing a dataset of labeled traces for the evaluation of norms.
+     * It keeps a snapshot of the traces (so that their position in the dataset does not change), their labels
+     * w.r.t. the MAS objectives as a bit vector, and the violation vector of every norm evaluated so far,
+     * i.e., a bit vector where the i-th bit is set iff the i-th trace violates the norm.
+     * Norms that can be packed (see PackedHighwayNorm) are evaluated on a columnar copy of the traces (positions,
+     * speeds, distances and types of the states) and their violation vectors are keyed by their packed representation.
+     * Norms can be evaluated concurrently
+     */
+    private final ArrayList<Trace> traces;
+    private final BitSet labels;
+    private final Map<String, BitSet> violations = new ConcurrentHashMap<>();
+    private final Map<Long, BitSet> packedViolations = new ConcurrentHashMap<>();
+
+    /* columnar copy of the traces, created the first time a packed norm is evaluated */
+    private int[][] positions;
+    private double[][] speeds;
+    private double[][] dists;
+    private int[][] types;
+
+    public EvaluationIndex(List<Trace> traces) {
+        this.traces = new ArrayList<>(traces);
+        this.labels = new BitSet(traces.size());
+        for(int i=0; i<this.traces.size(); i++)
+            if(this.traces.get(i).getObjEval())
+                labels.set(i);
+    }
+
+    public int size() {
+        return traces.size();
+    }
+
+    public ArrayList<Trace> getTraces() {
+        return traces;
+    }
+
+    public BitSet getLabels() {
+        /**
+         * Returns the labels of the traces (bit i set iff the i-th trace is labeled as positive). Not to be modified
+         */
+        return labels;
+    }
+
+    public int getNrPositives() {
+        return labels.cardinality();
+    }
+
+    public int countTraces(boolean positive, List<BitSet> viols, boolean[] violated) {
+        /**
+         * Returns the number of traces labeled as positive (if positive) or negative (otherwise) that, for every i,
+         * violate (if violated[i]) or do not violate (otherwise) the norm with violation vector viols.get(i)
+         */
+        BitSet selected = (BitSet) labels.clone();
+        if(!positive)
+            selected.flip(0, traces.size());
+        for(int i=0; i<viols.size(); i++) {
+            if(violated[i])
+                selected.and(viols.get(i));
+            else
+                selected.andNot(viols.get(i));
+        }
+        return selected.cardinality();
+    }
+
+    public BitSet getViolations(DNFNorm n) {
+        /**
+         * Returns the violation vector of norm n. The vector is computed only the first time the norm is evaluated,
+         * and it is shared with later callers, so it must not be modified
+         */
+        long code = PackedHighwayNorm.pack(n);
+        if(code!=PackedHighwayNorm.NOT_PACKABLE)
+            return getViolations(code);
+        String key = getNormKey(n);
+        BitSet viol = violations.get(key);
+        if(viol==null) {
+            viol = new BitSet(traces.size());
+            for(int i=0; i<traces.size(); i++)
+                if(n.isViol(traces.get(i))>-1)
+                    viol.set(i);
+            BitSet prev = violations.putIfAbsent(key, viol);
+            if(prev!=null)
+                viol = prev;
+        }
+        return viol;
+    }
+
+    public BitSet getViolations(long code) {
+        /**
+         * Returns the violation vector of the packed norm code (shared, as above)
+         */
+        BitSet viol = packedViolations.get(code);
+        if(viol==null) {
+            buildColumns();
+            viol = new BitSet(traces.size());
+            if(!PackedHighwayNorm.isDisabled(code))
+                for(int i=0; i<traces.size(); i++)
+                    if(PackedHighwayNorm.isViol(code, positions[i], speeds[i], dists[i], types[i])>-1)
+                        viol.set(i);
+            BitSet prev = packedViolations.putIfAbsent(code, viol);
+            if(prev!=null)
+                viol = prev;
+        }
+        return viol;
+    }
+
+    public BitSet getViolations(DNFNorm n, DNFNorm parent) {
+        /**
+         * Returns the violation vector of norm n, a revision of norm parent (shared, as above).
+         * If both norms can be packed, the vector is derived from the one of the parent (see the method on packed norms),
+         * otherwise it is computed as usual
+         */
+        long code = PackedHighwayNorm.pack(n);
+        long parent_code = PackedHighwayNorm.pack(parent);
+        if(code==PackedHighwayNorm.NOT_PACKABLE || parent_code==PackedHighwayNorm.NOT_PACKABLE)
+            return getViolations(n);
+        return getViolations(code, parent_code);
+    }
+
+    public BitSet getViolations(long code, long parent_code) {
+        /**
+         * Returns the violation vector of the packed norm code, a revision of the packed norm parent_code, evaluating
+         * only the traces whose verdict may differ from the one of the parent.
+         * Being violated is monotone in the components: a trace violates a norm iff the condition holds in a state
+         * and the prohibition holds in the same or in a later state, with the deadline not holding in between.
+         * Therefore, if neither norm is disabled:
+         * - if the condition and the prohibition of code hold in fewer states and its deadline in more states (i.e.,
+         *   it is a weakening of the parent), the traces that do not violate the parent do not violate code either,
+         *   and only the traces violating the parent are evaluated;
+         * - in the opposite case (a strengthening of the parent), the traces violating the parent violate code too,
+         *   and only the other traces are evaluated.
+         * In any other case all the traces are evaluated
+         */
+        BitSet viol = packedViolations.get(code);
+        if(viol!=null)
+            return viol;
+        if(PackedHighwayNorm.isDisabled(code) || PackedHighwayNorm.isDisabled(parent_code) ||
+                PackedHighwayNorm.getKind(code)!=PackedHighwayNorm.getKind(parent_code))
+            return getViolations(code);
+        boolean weaker = PackedHighwayNorm.isAtLeastAsSpecific(code, parent_code, Constants.CONDITION) &&
+                PackedHighwayNorm.isAtLeastAsSpecific(code, parent_code, Constants.PROHIBITION) &&
+                PackedHighwayNorm.isAtLeastAsSpecific(parent_code, code, Constants.DEADLINE);
+        boolean stronger = PackedHighwayNorm.isAtLeastAsSpecific(parent_code, code, Constants.CONDITION) &&
+                PackedHighwayNorm.isAtLeastAsSpecific(parent_code, code, Constants.PROHIBITION) &&
+                PackedHighwayNorm.isAtLeastAsSpecific(code, parent_code, Constants.DEADLINE);
+        if(!weaker && !stronger)
+            return getViolations(code);
+        BitSet parent_viol = getViolations(parent_code);
+        buildColumns();
+        viol = (BitSet) parent_viol.clone();
+        if(weaker && !stronger) {
+            for(int i=parent_viol.nextSetBit(0); i>=0; i=parent_viol.nextSetBit(i+1))
+                if(PackedHighwayNorm.isViol(code, positions[i], speeds[i], dists[i], types[i])==-1)
+                    viol.clear(i);
+        }
+        else if(stronger && !weaker) {
+            for(int i=parent_viol.nextClearBit(0); i<traces.size(); i=parent_viol.nextClearBit(i+1))
+                if(PackedHighwayNorm.isViol(code, positions[i], speeds[i], dists[i], types[i])>-1)
+                    viol.set(i);
+        }
+        BitSet prev = packedViolations.putIfAbsent(code, viol);
+        if(prev!=null)
+            viol = prev;
+        return viol;
+    }
+
+    private synchronized void buildColumns() {
+        if(positions!=null)
+            return;
+        positions = new int[traces.size()][];
+        speeds = new double[traces.size()][];
+        dists = new double[traces.size()][];
+        types = new int[traces.size()][];
+        for(int i=0; i<traces.size(); i++) {
+            List<State> states = traces.get(i).getStates();
+            positions[i] = new int[states.size()];
+            speeds[i] = new double[states.size()];
+            dists[i] = new double[states.size()];
+            types[i] = new int[states.size()];
+            for(int j=0; j<states.size(); j++) {
+                State s = states.get(j);
+                positions[i][j] = Integer.parseInt(s.getPosition().replace(Constants.KM, ""));
+                speeds[i][j] = s.getSpeed();
+                dists[i][j] = s.getDist();
+                types[i][j] = PackedHighwayNorm.getTypeMask(s.getType());
+            }
+        }
+    }
+
+    static String getNormKey(DNFNorm n) {
+        /**
+         * Norms do not override equals, so they are identified by their type and their string representation
+         */
+        return n.getClass().getSimpleName()+":"+n;
+    }
+}
@@ -0,0 +1,167 @@
+package dnr;
+
+import java.util.*;
+
+public class JointConfusionCube {
+    /**
+     * Class counting the joint outcomes of N norms w.r.t. a dataset of labeled traces.
+     * The outcome of a trace is encoded in an integer code of N+1 bits: the most significant bit is set iff the trace
+     * is labeled as negative, and the i-th of the remaining bits (starting from the most significant) is set iff the
+     * trace violates the i-th norm. The traces are counted in a single pass into a cube of 2^(N+1) cells, from which
+     * the multi-label accuracy, the confusion matrices of the single norms and the joint confusion matrix are derived.
+     * Codes are ordered as the columns of the joint confusion matrix: positive traces first, then negative traces, and
+     * within each block by the violations of the norms (e.g., for 2 norms: pfc, ppc1, ppc2, pfw, nfw, npc2, npc1, nfc)
+     */
+    public static final int MAX_NR_NORMS = 20;
+
+    private final int nrNorms;
+    private final int[] counts;
+
+    public JointConfusionCube(EvaluationIndex index, List<BitSet> viols) {
+        this.nrNorms = viols.size();
+        if(nrNorms>MAX_NR_NORMS)
+            throw new IllegalArgumentException("Joint confusion cube supports at most "+MAX_NR_NORMS+" norms");
+        this.counts = new int[1 << (nrNorms+1)];
+        BitSet labels = index.getLabels();
+        for(int t=0; t<index.size(); t++) {
+            int code = labels.get(t) ? 0 : 1;
+            for(BitSet viol : viols)
+                code = (code << 1) | (viol.get(t) ? 1 : 0);
+            counts[code]++;
+        }
+    }
+
+    public JointConfusionCube(EvaluationIndex index, List<BitSet> viols, BitSet mask) {
+        /**
+         * Creates the cube of the traces of index selected by mask (e.g., a fold of the traces, see TraceFolds).
+         * The traces are not scanned: the mask is split by the labels and then by the violation vectors, one norm at a
+         * time, and each cell is the popcount of the resulting vector (empty vectors are not split further)
+         */
+        this.nrNorms = viols.size();
+        if(nrNorms>MAX_NR_NORMS)
+            throw new IllegalArgumentException("Joint confusion cube supports at most "+MAX_NR_NORMS+" norms");
+        this.counts = new int[1 << (nrNorms+1)];
+        BitSet positives = (BitSet) mask.clone();
+        positives.and(index.getLabels());
+        BitSet negatives = (BitSet) mask.clone();
+        negatives.andNot(index.getLabels());
+        countCells(positives, viols, 0, 0);
+        countCells(negatives, viols, 0, 1);
+    }
+
+    private void countCells(BitSet traces, List<BitSet> viols, int i, int code) {
+        if(traces.isEmpty())
+            return;
+        if(i==nrNorms) {
+            counts[code] = traces.cardinality();
+            return;
+        }
+        BitSet violating = (BitSet) traces.clone();
+        violating.and(viols.get(i));
+        traces.andNot(viols.get(i));
+        countCells(traces, viols, i+1, code << 1);
+        countCells(violating, viols, i+1, (code << 1) | 1);
+    }
+
+    public int getNrNorms() {
+        return nrNorms;
+    }
+
+    public int size() {
+        /**
+         * Number of traces counted
+         */
+        int size = 0;
+        for(int count : counts)
+            size = size + count;
+        return size;
+    }
+
+    public int getCount(boolean positive, int violations) {
+        /**
+         * Returns the number of traces labeled as positive (if positive) or negative (otherwise) that violate exactly
+         * the norms whose bits are set in violations (the first norm being the most significant bit)
+         */
+        return counts[(positive ? 0 : 1 << nrNorms) | violations];
+    }
+
+    private boolean isViolated(int violations, int i) {
+        return (violations >> (nrNorms-1-i) & 1) == 1;
+    }
+
+    public ConfusionMatrix getNormConfusionMatrix(int i) {
+        /**
+         * Returns the confusion matrix of the i-th norm
+         */
+        int tp = 0, fp = 0, tn = 0, fn = 0;
+        for(int v=0; v<(1 << nrNorms); v++) {
+            if(isViolated(v, i)) {
+                fn = fn + getCount(true, v);
+                tn = tn + getCount(false, v);
+            } else {
+                tp = tp + getCount(true, v);
+                fp = fp + getCount(false, v);
+            }
+        }
+        return new ConfusionMatrix(tp, fp, tn, fn);
+    }
+
+    public double getMultiLabelAccuracy() {
+        /**
+         * Returns the multi-label accuracy of the norms: a positive trace scores the fraction of norms it does not
+         * violate, a negative trace scores 1 if it violates all norms and 0 otherwise (-1 if there are no traces).
+         * The scores are summed cell by cell, so the result is the sum of the per-trace scores only when the number of
+         * norms is a power of 2 (the fractions being exact); otherwise it can differ in the last digits (see
+         * DNR.getMultiLabelAccuracy)
+         */
+        int size = size();
+        if(size==0)
+            return -1;
+        int all_violated = (1 << nrNorms)-1;
+        if(nrNorms==0)
+            return 1.0;
+        long obeyed = 0;
+        for(int v=0; v<=all_violated; v++)
+            obeyed = obeyed + (long) getCount(true, v)*(nrNorms-Integer.bitCount(v));
+        double ml_acc = (double) obeyed/nrNorms + getCount(false, all_violated);
+        return ml_acc/size;
+    }
+
+    public ArrayList<Integer> toList() {
+        /**
+         * Returns the joint confusion matrix, i.e., the counts of all the codes (2^(N+1) elements), in the order of
+         * the columns given by getColumnNames
+         */
+        ArrayList<Integer> conf_matrix = new ArrayList<>(counts.length);
+        for(int count : counts)
+            conf_matrix.add(count);
+        return conf_matrix;
+    }
+
+    public static ArrayList<String> getColumnNames(int nr_norms) {
+        /**
+         * Returns the names of the columns of the joint confusion matrix of nr_norms norms: pfc (positive fully
+         * correct, no norm violated), pfw (positive fully wrong, all norms violated), ppc followed by the norms not
+         * violated (positive partly correct), and similarly nfc, nfw and npc followed by the norms violated for
+         * negative traces. Norms are numbered from 1
+         */
+        ArrayList<String> names = new ArrayList<>();
+        int all_violated = (1 << nr_norms)-1;
+        for(int positive=1; positive>=0; positive--) {
+            for(int v=0; v<=all_violated; v++) {
+                String correct = "";
+                for(int i=0; i<nr_norms; i++)
+                    if(((v >> (nr_norms-1-i) & 1) == 1) != (positive==1))
+                        correct = correct + (i+1);
+                String p = positive==1 ? "p" : "n";
+                if(correct.length()==nr_norms)
+                    names.add(p+"fc");
+                else if(correct.isEmpty())
+                    names.add(p+"fw");
+                else
+                    names.add(p+"pc"+correct);
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,118 @@
+package dnr;
+
+import java.util.*;
+
+public class ParetoFront {
+    /**
+     * Class keeping the configurations that are not dominated by any other configuration added so far w.r.t. their
+     * objective vectors (all objectives to be maximized), so that the non-dominated set can be updated incrementally
+     * as the configurations are scored. A configuration dominates another if it is at least as good in every objective
+     * and better in at least one. The configurations are kept sorted by decreasing first objective, so that a new
+     * configuration is compared only with the ones that could dominate it (not worse in the first objective) and with
+     * the ones it could dominate (not better in the first objective).
+     * The class also implements the fast non-dominated sort, to split a set of objective vectors into fronts
+     */
+    private final ArrayList<ScoredConfiguration> configs = new ArrayList<>();
+    private final ArrayList<double[]> objectives = new ArrayList<>();
+
+    public static boolean dominates(double[] lhs, double[] rhs) {
+        boolean better = false;
+        for(int i=0; i<lhs.length; i++) {
+            if(lhs[i]<rhs[i])
+                return false;
+            if(lhs[i]>rhs[i])
+                better = true;
+        }
+        return better;
+    }
+
+    public boolean add(ScoredConfiguration sc, double[] objective) {
+        /**
+         * Adds configuration sc with objective vector objective, unless it is dominated. The configurations it
+         * dominates are removed. Returns whether sc has been added
+         */
+        //first position whose first objective is lower than the one of the new configuration
+        int lo = 0;
+        int hi = objectives.size();
+        while(lo<hi) {
+            int mid = (lo+hi) >>> 1;
+            if(objectives.get(mid)[0]>=objective[0])
+                lo = mid+1;
+            else
+                hi = mid;
+        }
+        for(int i=0; i<lo; i++)
+            if(dominates(objectives.get(i), objective))
+                return false;
+        //the configurations with the same first objective can be dominated as well
+        int first = lo;
+        while(first>0 && objectives.get(first-1)[0]==objective[0])
+            first--;
+        for(int i=objectives.size()-1; i>=first; i--) {
+            if(dominates(objective, objectives.get(i))) {
+                objectives.remove(i);
+                configs.remove(i);
+                if(i<lo)
+                    lo--;
+            }
+        }
+        objectives.add(lo, objective);
+        configs.add(lo, sc);
+        return true;
+    }
+
+    public int size() {
+        return configs.size();
+    }
+
+    public List<ScoredConfiguration> getFront() {
+        /**
+         * Returns the non-dominated configurations, sorted by ScoredConfiguration.RANKING
+         */
+        ArrayList<ScoredConfiguration> front = new ArrayList<>(configs);
+        front.sort(ScoredConfiguration.RANKING);
+        return front;
+    }
+
+    public static List<List<Integer>> sortFronts(List<double[]> objectives) {
+        /**
+         * Fast non-dominated sort: returns the indexes of the objective vectors split into fronts, where the first
+         * front contains the non-dominated vectors, the second one the vectors dominated only by vectors in the
+         * first front, and so on. Indexes are in increasing order within each front.
+         * Vectors are considered in decreasing lexicographic order, so that a vector can be dominated only by the
+         * vectors considered before it, and each vector is put in the first front with no vector dominating it
+         * (efficient non-dominated sort), which needs memory linear in the number of vectors
+         */
+        ArrayList<Integer> order = new ArrayList<>(objectives.size());
+        for(int i=0; i<objectives.size(); i++)
+            order.add(i);
+        order.sort((lhs, rhs) -> {
+            double[] l = objectives.get(lhs);
+            double[] r = objectives.get(rhs);
+            for(int i=0; i<l.length; i++)
+                if(l[i]!=r[i])
+                    return Double.compare(r[i], l[i]);
+            return Integer.compare(lhs, rhs);
+        });
+        List<List<Integer>> fronts = new ArrayList<>();
+        for(int i : order) {
+            int k = 0;
+            while(k<fronts.size() && isDominated(objectives, fronts.get(k), objectives.get(i)))
+                k++;
+            if(k==fronts.size())
+                fronts.add(new ArrayList<>());
+            fronts.get(k).add(i);
+        }
+        for(List<Integer> front : fronts)
+            Collections.sort(front);
+        return fronts;
+    }
+
+    private static boolean isDominated(List<double[]> objectives, List<Integer> front, double[] objective) {
+        //the last vectors added to the front are the closest to objective in the lexicographic order
+        for(int j=front.size()-1; j>=0; j--)
+            if(dominates(objectives.get(front.get(j)), objective))
+                return true;
+        return false;
+    }
+}
@@ -0,0 +1,94 @@
+package dnr;
+
+import java.util.*;
+
+public class PoissonBootstrap {
+    /**
+     * Class implementing the Poisson bootstrap of a quality that is the average of a score per trace (e.g., the
+     * accuracy or the multi-label accuracy of a configuration).
+     * Instead of drawing the traces of every resample with replacement, every trace gets in every resample a weight
+     * drawn from a Poisson distribution with mean 1 (the number of times it is drawn), so the weights of all the
+     * resamples are drawn once per dataset size and then applied to the score vectors of any number of configurations:
+     * the quality of a configuration in a resample is the weighted average of its scores.
+     * The weights are stored trace by trace, so all the resamples of all the configurations are computed in a single
+     * pass over the traces
+     */
+    private final int size;
+    private final int resamples;
+    private final byte[][] weights; //weights[t][b] is the weight of trace t in resample b
+    private final double[] totals; //total weight of every resample
+
+    public PoissonBootstrap(int size, int resamples, long seed) {
+        this.size = size;
+        this.resamples = resamples;
+        this.weights = new byte[size][resamples];
+        this.totals = new double[resamples];
+        Random r = new Random(seed);
+        double limit = Math.exp(-1.0);
+        for(int t=0; t<size; t++) {
+            for(int b=0; b<resamples; b++) {
+                //Knuth's method: the number of uniform draws whose product stays above e^-1
+                int w = 0;
+                double p = r.nextDouble();
+                while(p>limit && w<Byte.MAX_VALUE) {
+                    w++;
+                    p = p*r.nextDouble();
+                }
+                weights[t][b] = (byte) w;
+                totals[b] = totals[b] + w;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getNrResamples() {
+        return resamples;
+    }
+
+    public double[][] resample(List<double[]> scores) {
+        /**
+         * Returns, for every vector of scores per trace, its weighted average in every resample (NaN if the resample
+         * has no trace)
+         */
+        double[][] qualities = new double[scores.size()][resamples];
+        for(int t=0; t<size; t++) {
+            byte[] w = weights[t];
+            for(int c=0; c<scores.size(); c++) {
+                double s = scores.get(c)[t];
+                if(s==0.0)
+                    continue;
+                double[] q = qualities[c];
+                for(int b=0; b<resamples; b++)
+                    q[b] = q[b] + w[b]*s;
+            }
+        }
+        for(double[] q : qualities)
+            for(int b=0; b<resamples; b++)
+                q[b] = q[b]/totals[b];
+        return qualities;
+    }
+
+    public List<double[]> getIntervals(List<double[]> scores, double confidence) {
+        /**
+         * Returns, for every vector of scores per trace, the percentile bootstrap confidence interval (lower and upper
+         * bound) of its average at the confidence level confidence
+         */
+        List<double[]> intervals = new ArrayList<>();
+        for(double[] q : resample(scores))
+            intervals.add(getPercentileInterval(q, confidence));
+        return intervals;
+    }
+
+    static double[] getPercentileInterval(double[] values, double confidence) {
+        double[] sorted = Arrays.stream(values).filter(v -> !Double.isNaN(v)).sorted().toArray();
+        if(sorted.length==0)
+            return new double[]{-1, -1};
+        double alpha = (1.0-confidence)/2.0;
+        int lo = (int) Math.floor(alpha*(sorted.length-1));
+        int hi = (int) Math.ceil((1.0-alpha)*(sorted.length-1));
+        return new double[]{sorted[lo], sorted[hi]};
+    }
+}
@@ -0,0 +1,264 @@
+package dnr;
+
+import simulation.DNFNorm;
+import simulation.PackedHighwayNorm;
+import simulation.State;
+import simulation.Trace;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class RevisionCache {
+    /**
+     * Class implementing a cache of what DNR computes for a norm w.r.t. a dataset of traces, so that it can be reused
+     * by the different revision strategies and by the repeated revisions of the same norm.
+     * The quality of the configurations is cached as well, so that the configurations already scored in a previous
+     * revision (e.g., the ones combining the norms that did not change) are not scored again. As the quality of a
+     * configuration depends only on the violation vectors of its norms, it is keyed by the evaluation index and the
+     * (shared) violation vectors, and only the about MAX_CONFIG_QUALITIES most recently used qualities are kept.
+     * Entries are keyed by the dataset and the norm (its type and string representation). A dataset is identified by
+     * the list of traces (the same list object), which is assumed not to change its content while it is in the cache.
+     * Only the MAX_DATASETS most recently used datasets are kept, together with all the entries computed for them.
+     * The cache can be used concurrently (e.g., by the parallel selection step)
+     */
+    static final int MAX_DATASETS = 4;
+    static final int MAX_CONFIG_QUALITIES = 1 << 20;
+
+    private final ArrayList<List<Trace>> datasets = new ArrayList<>();
+    private final ArrayList<Integer> datasetsIds = new ArrayList<>();
+    private final ArrayList<EvaluationIndex> indexes = new ArrayList<>();
+    private int nextDatasetId = 0;
+
+    /* the six sets of states, the propositions in each set of states and the candidate norms of a norm */
+    private final Map<String, LinkedHashMap<String, Set<State>>> states = new ConcurrentHashMap<>();
+    private final Map<String, LinkedHashMap<String, Set<String>>> relProp = new ConcurrentHashMap<>();
+    private final Map<String, PackedCandidates> candidates = new ConcurrentHashMap<>();
+    /* the quality of the norms already scored, per metric */
+    private final Map<String, Double> quality = new ConcurrentHashMap<>();
+    /* the time (in ms) to evaluate the norms already timed, to which the space parameters are tuned */
+    private final Map<String, Double> evaluationTime = new ConcurrentHashMap<>();
+    /* the quality of the configurations already scored, per metric: the entries used since the last generation
+    change, and the ones of the previous generation (dropped at the next change) */
+    private volatile Map<ConfigKey, Double> configQuality = new ConcurrentHashMap<>();
+    private volatile Map<ConfigKey, Double> oldConfigQuality = new ConcurrentHashMap<>();
+
+    public synchronized int getDatasetId(List<Trace> traces) {
+        /**
+         * Returns the id of the dataset of traces, registering it if it is not in the cache yet
+         */
+        for(int i=0; i<datasets.size(); i++)
+            if(datasets.get(i)==traces) {
+                int id = datasetsIds.get(i);
+                if(i<datasets.size()-1) { //the most recently used dataset goes last, so it is evicted last
+                    EvaluationIndex index = indexes.get(i);
+                    datasets.remove(i);
+                    datasetsIds.remove(i);
+                    indexes.remove(i);
+                    datasets.add(traces);
+                    datasetsIds.add(id);
+                    indexes.add(index);
+                }
+                return id;
+            }
+        int id = nextDatasetId++;
+        datasets.add(traces);
+        datasetsIds.add(id);
+        indexes.add(null);
+        if(datasets.size()>MAX_DATASETS)
+            evictDataset(0);
+        return id;
+    }
+
+    public synchronized EvaluationIndex getIndex(List<Trace> traces) {
+        /**
+         * Returns the evaluation index of the dataset of traces, creating it the first time
+         */
+        int id = getDatasetId(traces);
+        int pos = datasetsIds.indexOf(id);
+        if(indexes.get(pos)==null)
+            indexes.set(pos, new EvaluationIndex(traces));
+        return indexes.get(pos);
+    }
+
+    private void evictDataset(int pos) {
+        String prefix = datasetsIds.get(pos)+"|";
+        datasets.remove(pos);
+        datasetsIds.remove(pos);
+        states.keySet().removeIf(k -> k.startsWith(prefix));
+        relProp.keySet().removeIf(k -> k.startsWith(prefix));
+        candidates.keySet().removeIf(k -> k.startsWith(prefix));
+        quality.keySet().removeIf(k -> k.startsWith(prefix));
+        evaluationTime.keySet().removeIf(k -> k.startsWith(prefix));
+        EvaluationIndex index = indexes.remove(pos);
+        if(index!=null) {
+            configQuality.keySet().removeIf(k -> k.index==index);
+            oldConfigQuality.keySet().removeIf(k -> k.index==index);
+        }
+    }
+
+    public synchronized void clear() {
+        datasets.clear();
+        datasetsIds.clear();
+        indexes.clear();
+        states.clear();
+        relProp.clear();
+        candidates.clear();
+        quality.clear();
+        evaluationTime.clear();
+        configQuality.clear();
+        oldConfigQuality.clear();
+    }
+
+    String getKey(List<Trace> traces, DNFNorm norm, String... qualifiers) {
+        StringBuilder key = new StringBuilder(getDatasetId(traces)+"|"+EvaluationIndex.getNormKey(norm));
+        for(String q : qualifiers)
+            key.append("|").append(q);
+        return key.toString();
+    }
+
+
+    public LinkedHashMap<String, Set<State>> getStates(List<Trace> traces, DNFNorm norm) {
+        return states.get(getKey(traces, norm));
+    }
+
+    public void putStates(List<Trace> traces, DNFNorm norm, LinkedHashMap<String, Set<State>> states_sets) {
+        states.put(getKey(traces, norm), states_sets);
+    }
+
+    public LinkedHashMap<String, Set<String>> getRelProp(List<Trace> traces, DNFNorm norm) {
+        return relProp.get(getKey(traces, norm));
+    }
+
+    public void putRelProp(List<Trace> traces, DNFNorm norm, LinkedHashMap<String, Set<String>> prop_sets) {
+        relProp.put(getKey(traces, norm), prop_sets);
+    }
+
+    public boolean hasCandidates(List<Trace> traces, DNFNorm norm, String revision_type) {
+        return candidates.containsKey(getKey(traces, norm, revision_type));
+    }
+
+    public ArrayList<DNFNorm> getCandidates(List<Trace> traces, DNFNorm norm, String revision_type, String normID, Random r) {
+        /**
+         * Returns the candidate norms of norm, with id normID: the packed ones are unpacked (in the order of their
+         * packed representations) and followed by the other ones (in the order they were put). Null if not cached
+         */
+        PackedCandidates cached = candidates.get(getKey(traces, norm, revision_type));
+        if(cached==null)
+            return null;
+        ArrayList<DNFNorm> candidate_norms = new ArrayList<>(cached.codes.length+cached.others.size());
+        for(long code : cached.codes)
+            candidate_norms.add(PackedHighwayNorm.unpack(code, normID, r));
+        candidate_norms.addAll(cached.others);
+        return candidate_norms;
+    }
+
+    public void putCandidates(List<Trace> traces, DNFNorm norm, String revision_type, Collection<DNFNorm> candidate_norms) {
+        /**
+         * Caches the candidate norms of norm. The ones that can be packed are kept only as their packed
+         * representations (8 bytes each, duplicates removed), see getCandidates
+         */
+        ArrayList<DNFNorm> others = new ArrayList<>();
+        for(DNFNorm n : candidate_norms)
+            if(PackedHighwayNorm.pack(n)==PackedHighwayNorm.NOT_PACKABLE)
+                others.add(n);
+        candidates.put(getKey(traces, norm, revision_type), new PackedCandidates(PackedHighwayNorm.packAll(candidate_norms), others));
+    }
+
+    public Double getQuality(List<Trace> traces, DNFNorm norm, String metric) {
+        return quality.get(getKey(traces, norm, metric));
+    }
+
+    public void putQuality(List<Trace> traces, DNFNorm norm, String metric, double q) {
+        quality.put(getKey(traces, norm, metric), q);
+    }
+
+    public Double getEvaluationTime(List<Trace> traces, DNFNorm norm) {
+        return evaluationTime.get(getKey(traces, norm));
+    }
+
+    public void putEvaluationTime(List<Trace> traces, DNFNorm norm, double ms) {
+        evaluationTime.put(getKey(traces, norm), ms);
+    }
+
+    public Double getQuality(EvaluationIndex index, List<BitSet> viols, String metric) {
+        /**
+         * Returns the quality w.r.t. metric of the configuration whose norms have the violation vectors viols (in the
+         * order of the configuration) in index, if already scored. An entry of the previous generation is moved to
+         * the current one, so the entries used recently are kept
+         */
+        ConfigKey key = new ConfigKey(index, viols, metric);
+        Double q = configQuality.get(key);
+        if(q==null) {
+            q = oldConfigQuality.get(key);
+            if(q!=null)
+                putQuality(key, q);
+        }
+        return q;
+    }
+
+    public void putQuality(EvaluationIndex index, List<BitSet> viols, String metric, double q) {
+        putQuality(new ConfigKey(index, viols, metric), q);
+    }
+
+    private void putQuality(ConfigKey key, double q) {
+        configQuality.put(key, q);
+        if(configQuality.size()>=MAX_CONFIG_QUALITIES/2) {
+            synchronized(this) {
+                if(configQuality.size()>=MAX_CONFIG_QUALITIES/2) {
+                    oldConfigQuality = configQuality;
+                    configQuality = new ConcurrentHashMap<>();
+                }
+            }
+        }
+    }
+
+    private static final class PackedCandidates {
+        /* the candidate norms that can be packed, as a sorted set of packed representations, and the other ones */
+        final long[] codes;
+        final ArrayList<DNFNorm> others;
+
+        PackedCandidates(long[] codes, ArrayList<DNFNorm> others) {
+            this.codes = codes;
+            this.others = others;
+        }
+    }
+
+    private static final class ConfigKey {
+        /**
+         * Key of the quality of a configuration: the violation vectors are shared by the evaluation index (one per
+         * norm), so they are compared by identity and the key is built without evaluating nor printing the norms
+         */
+        private final EvaluationIndex index;
+        private final BitSet[] viols;
+        private final String metric;
+        private final int hash;
+
+        ConfigKey(EvaluationIndex index, List<BitSet> viols, String metric) {
+            this.index = index;
+            this.viols = viols.toArray(new BitSet[0]);
+            this.metric = metric;
+            int h = System.identityHashCode(index)*31 + metric.hashCode();
+            for(BitSet viol : this.viols)
+                h = h*31 + System.identityHashCode(viol);
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof ConfigKey))
+                return false;
+            ConfigKey key = (ConfigKey) obj;
+            if(key.index!=index || key.viols.length!=viols.length || !key.metric.equals(metric))
+                return false;
+            for(int i=0; i<viols.length; i++)
+                if(key.viols[i]!=viols[i])
+                    return false;
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package dnr;
+
+import simulation.Configuration;
+
+import java.util.*;
+
+public class ScoredConfiguration {
+    /**
+     * Class representing a configuration considered in the selection step, together with its quality and its index,
+     * i.e., the position in which it was generated (by the CombinationEnumerator or by the Monte Carlo sampling).
+     * The index is used to break ties between configurations with the same quality, so that a ranking does not depend
+     * on the order in which the configurations have been scored
+     */
+    public static final Comparator<ScoredConfiguration> RANKING = (lhs, rhs) -> {
+        int cmp = Double.compare(rhs.quality, lhs.quality); //descending quality
+        if(cmp!=0)
+            return cmp;
+        return Long.compare(lhs.index, rhs.index);
+    };
+
+    private final Configuration config;
+    private final double quality;
+    private final long index;
+
+    public ScoredConfiguration(Configuration config, double quality, long index) {
+        this.config = config;
+        this.quality = quality;
+        this.index = index;
+    }
+
+    public Configuration getConfig() {
+        return config;
+    }
+
+    public double getQuality() {
+        return quality;
+    }
+
+    public long getIndex() {
+        return index;
+    }
+
+    public static List<ScoredConfiguration> merge(List<ScoredConfiguration> l1, List<ScoredConfiguration> l2, int k) {
+        /**
+         * Merges two rankings (lists sorted by RANKING) into a single ranking of at most k configurations
+         */
+        int size = (int) Math.min((long) l1.size()+l2.size(), k);
+        ArrayList<ScoredConfiguration> merged = new ArrayList<>(size);
+        int i = 0;
+        int j = 0;
+        while(merged.size()<size) {
+            if(j>=l2.size() || (i<l1.size() && RANKING.compare(l1.get(i), l2.get(j))<=0))
+                merged.add(l1.get(i++));
+            else
+                merged.add(l2.get(j++));
+        }
+        return merged;
+    }
+
+    @Override
+    public String toString() {
+        return index+": "+config+" ("+quality+")";
+    }
+}
@@ -0,0 +1,83 @@
+package dnr;
+
+import java.util.*;
+
+public class TopKRanking {
+    /**
+     * Class keeping the best k scored configurations (w.r.t. ScoredConfiguration.RANKING) among the ones added,
+     * in a bounded heap whose head is the worst configuration kept, so that memory does not grow with the number of
+     * configurations scored. With k equal to Integer.MAX_VALUE all configurations are kept (and sorted only at the end).
+     * Since ties are broken by the index of the configurations, the ranking does not depend on the order in which
+     * the configurations are added
+     */
+    private final int k;
+    private final PriorityQueue<ScoredConfiguration> heap;
+    private final ArrayList<ScoredConfiguration> all;
+
+    public TopKRanking(int k) {
+        this.k = k;
+        if(k==Integer.MAX_VALUE) {
+            this.heap = null;
+            this.all = new ArrayList<>();
+        } else {
+            this.heap = new PriorityQueue<>(Math.max(1, Math.min(k, 1024)), ScoredConfiguration.RANKING.reversed());
+            this.all = null;
+        }
+    }
+
+    public void add(ScoredConfiguration sc) {
+        if(all!=null)
+            all.add(sc);
+        else if(heap.size()<k)
+            heap.add(sc);
+        else if(k>0 && ScoredConfiguration.RANKING.compare(sc, heap.peek())<0) {
+            heap.poll();
+            heap.add(sc);
+        }
+    }
+
+    public boolean accepts(double quality, long index) {
+        /**
+         * Returns whether a configuration with the given quality and index would be kept if added, so that its
+         * configuration can be created only in that case
+         */
+        if(all!=null || heap.size()<k)
+            return true;
+        if(k<=0)
+            return false;
+        ScoredConfiguration last = heap.peek();
+        int cmp = Double.compare(quality, last.getQuality()); //as ScoredConfiguration.RANKING
+        return cmp>0 || (cmp==0 && index<last.getIndex());
+    }
+
+    public void addAll(Collection<ScoredConfiguration> scs) {
+        for(ScoredConfiguration sc : scs)
+            add(sc);
+    }
+
+    public int size() {
+        return all!=null ? all.size() : heap.size();
+    }
+
+    public boolean isFull() {
+        return size()>=k;
+    }
+
+    public ScoredConfiguration getLast() {
+        /**
+         * Returns the worst configuration kept (the k-th when the ranking is full)
+         */
+        if(all!=null)
+            return all.isEmpty() ? null : Collections.max(all, ScoredConfiguration.RANKING);
+        return heap.peek();
+    }
+
+    public List<ScoredConfiguration> getRanking() {
+        /**
+         * Returns the configurations kept, sorted by ScoredConfiguration.RANKING
+         */
+        ArrayList<ScoredConfiguration> ranking = new ArrayList<>(all!=null ? all : heap);
+        ranking.sort(ScoredConfiguration.RANKING);
+        return ranking;
+    }
+}
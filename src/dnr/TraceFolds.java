@@ -0,0 +1,104 @@
+package dnr;
+
+import java.util.*;
+
+public class TraceFolds {
+    /**
+     * Class representing the folds of an evaluation over a dataset of traces, each made of a train set and a test set.
+     * Sets are masks over the positions of the traces in the dataset (bit i set iff the i-th trace belongs to the
+     * set), so the folds do not copy nor reorder the traces, and the violation vectors and labels of the traces (see
+     * EvaluationIndex) are shared by all the folds
+     */
+    private final int size;
+    private final ArrayList<BitSet> train = new ArrayList<>();
+    private final ArrayList<BitSet> test = new ArrayList<>();
+
+    private TraceFolds(int size) {
+        this.size = size;
+    }
+
+    public static TraceFolds split(int size, double trainFraction, int repeats, Random r) {
+        /**
+         * Returns repeats random splits of a dataset of size traces, each with round(size*trainFraction) traces in the
+         * train set and the other ones in the test set
+         */
+        TraceFolds folds = new TraceFolds(size);
+        int train_size = (int) Math.round(size*trainFraction);
+        for(int rep=0; rep<repeats; rep++) {
+            int[] perm = permutation(size, r);
+            BitSet train_mask = new BitSet(size);
+            for(int i=0; i<train_size; i++)
+                train_mask.set(perm[i]);
+            folds.add(train_mask);
+        }
+        return folds;
+    }
+
+    public static TraceFolds kFold(int size, int k, int repeats, Random r) {
+        /**
+         * Returns the folds of repeats random k-fold partitions of a dataset of size traces: in every partition each
+         * trace is in the test set of exactly one fold, and the test sets differ in size by at most one trace
+         */
+        TraceFolds folds = new TraceFolds(size);
+        for(int rep=0; rep<repeats; rep++) {
+            int[] perm = permutation(size, r);
+            for(int f=0; f<k; f++) {
+                BitSet train_mask = new BitSet(size);
+                train_mask.set(0, size);
+                for(int i=(int) ((long) f*size/k); i<(int) ((long) (f+1)*size/k); i++)
+                    train_mask.clear(perm[i]);
+                folds.add(train_mask);
+            }
+        }
+        return folds;
+    }
+
+    private void add(BitSet train_mask) {
+        BitSet test_mask = new BitSet(size);
+        test_mask.set(0, size);
+        test_mask.andNot(train_mask);
+        train.add(train_mask);
+        test.add(test_mask);
+    }
+
+    static int[] permutation(int size, Random r) {
+        /**
+         * Returns a random permutation of 0..size-1 (Fisher-Yates)
+         */
+        int[] perm = new int[size];
+        for(int i=0; i<size; i++)
+            perm[i] = i;
+        for(int i=size-1; i>0; i--) {
+            int j = r.nextInt(i+1);
+            int tmp = perm[i];
+            perm[i] = perm[j];
+            perm[j] = tmp;
+        }
+        return perm;
+    }
+
+    public int size() {
+        /**
+         * Number of folds
+         */
+        return train.size();
+    }
+
+    public int getNrTraces() {
+        return size;
+    }
+
+    public BitSet getTrain(int fold) {
+        /**
+         * Returns the mask of the train set of the fold. Not to be modified
+         */
+        return train.get(fold);
+    }
+
+    public BitSet getTest(int fold) {
+        /**
+         * Returns the mask of the test set of the fold. Not to be modified
+         */
+        return test.get(fold);
+    }
+}
@@ -0,0 +1,274 @@
+package masobjeval;
+
+import simulation.*;
+
+import java.util.*;
+
+public class OASurrogate {
+    /**
+     * Surrogate model of the simulation, estimating the objective achievement rate (see
+     * MASObjectivesEvaluator.getCurrOA) of the traces generated by a configuration without running the simulation.
+     * It is a ridge regression trained on the configurations simulated so far, whose features are the parameters that
+     * the vehicles of the simulation react to (see HighwayVehicle): for every norm of the configuration and every type
+     * of vehicle, whether the norm is ever detached, the length of the road between detachment and deadline, the speed
+     * limit (or safety distance) and the product of length and strength of the restriction.
+     * The regularization is chosen among LAMBDAS by the leave-one-out error, which for ridge regression is computed in
+     * closed form, and is also the reported prediction error
+     */
+    public static final double[] LAMBDAS = {0.001, 0.01, 0.1, 1.0, 10.0, 100.0};
+    public static final int MIN_SAMPLES = 3;
+    static final String[] VEHICLE_TYPES = {Constants.CAR, Constants.TRUCK};
+    static final int FEATURES_PER_TYPE = 4;
+
+    private final List<String> normIds;
+    private final ArrayList<double[]> features = new ArrayList<>();
+    private final ArrayList<Double> targets = new ArrayList<>();
+
+    /* model trained on the current samples: standardization of the features, weights, intercept and errors */
+    private double[] means;
+    private double[] scales;
+    private double[] weights;
+    private double intercept;
+    private double lambda;
+    private double trainingError = -1;
+    private double looError = -1;
+    private boolean trained = false;
+
+    public OASurrogate(Collection<String> normIds) {
+        /**
+         * Creates a surrogate for configurations of the norms normIds (norms not in a configuration count as disabled)
+         */
+        this.normIds = new ArrayList<>(normIds);
+    }
+
+    public void addSample(Configuration config, double oa) {
+        /**
+         * Archives a simulated configuration with the objective achievement rate of its traces. The model is trained
+         * again at the next prediction
+         */
+        features.add(getFeatures(config));
+        targets.add(oa);
+        trained = false;
+    }
+
+    public void addSample(Configuration config, ArrayList<Trace> labeledTraces, MASObjectivesEvaluator maoe) {
+        addSample(config, maoe.getCurrOA(labeledTraces));
+    }
+
+    public int getNrSamples() {
+        return targets.size();
+    }
+
+    double[] getFeatures(Configuration config) {
+        double[] x = new double[normIds.size()*VEHICLE_TYPES.length*FEATURES_PER_TYPE];
+        int f = 0;
+        for(String id : normIds) {
+            DNFNorm n = config.getMap().get(id);
+            for(String veh_type : VEHICLE_TYPES) {
+                if(n instanceof HighwayNorm && !n.isEmpty()) {
+                    HighwayNorm hn = (HighwayNorm) n;
+                    double length = Math.max(0, hn.getDeadlinePosition(veh_type)-hn.getDetachmentPosition(veh_type));
+                    double strength = 0.0;
+                    double value = 0.0;
+                    if(n instanceof MaxSpeedNorm) {
+                        value = ((MaxSpeedNorm) n).getSpeed(veh_type);
+                        strength = HighwayNorm.MAX_SPEED-value;
+                    } else if(n instanceof MinDistNorm) {
+                        value = ((MinDistNorm) n).getDist(veh_type);
+                        strength = value-HighwayNorm.MIN_DIST;
+                    }
+                    x[f] = hn.getDetachmentPosition(veh_type)<=HighwayNorm.MAX_POS ? 1.0 : 0.0;
+                    x[f+1] = length;
+                    x[f+2] = value;
+                    x[f+3] = length*strength;
+                }
+                f = f+FEATURES_PER_TYPE;
+            }
+        }
+        return x;
+    }
+
+    public void train() {
+        /**
+         * Trains the model on the samples archived so far, choosing the regularization with the lowest leave-one-out
+         * error
+         */
+        int n = targets.size();
+        if(n<MIN_SAMPLES) {
+            System.out.println("WARNING: "+n+" samples are not enough to train the surrogate (at least "+MIN_SAMPLES+").");
+            return;
+        }
+        int d = features.get(0).length;
+        //standardization of the features (constant features are ignored) and centering of the targets
+        means = new double[d];
+        scales = new double[d];
+        double mean_target = 0.0;
+        for(int i=0; i<n; i++) {
+            mean_target = mean_target + targets.get(i)/n;
+            for(int j=0; j<d; j++)
+                means[j] = means[j] + features.get(i)[j]/n;
+        }
+        for(int i=0; i<n; i++)
+            for(int j=0; j<d; j++)
+                scales[j] = scales[j] + Math.pow(features.get(i)[j]-means[j], 2)/n;
+        for(int j=0; j<d; j++)
+            scales[j] = scales[j]>0 ? Math.sqrt(scales[j]) : 0.0;
+        double[][] z = new double[n][d];
+        double[] y = new double[n];
+        for(int i=0; i<n; i++) {
+            y[i] = targets.get(i)-mean_target;
+            for(int j=0; j<d; j++)
+                z[i][j] = scales[j]>0 ? (features.get(i)[j]-means[j])/scales[j] : 0.0;
+        }
+        double[][] gram = new double[d][d];
+        double[] zy = new double[d];
+        for(int i=0; i<n; i++) {
+            for(int j=0; j<d; j++) {
+                zy[j] = zy[j] + z[i][j]*y[i];
+                for(int k=0; k<d; k++)
+                    gram[j][k] = gram[j][k] + z[i][j]*z[i][k];
+            }
+        }
+        looError = Double.POSITIVE_INFINITY;
+        for(double l : LAMBDAS) {
+            double[][] chol = cholesky(gram, l);
+            double[] w = solve(chol, zy);
+            //leave-one-out residuals e_i/(1-h_ii), with h_ii the leverage of sample i (1/n for the intercept)
+            double sse = 0.0;
+            double loo_sse = 0.0;
+            for(int i=0; i<n; i++) {
+                double e = y[i]-dot(w, z[i]);
+                double h = 1.0/n + dot(z[i], solve(chol, z[i]));
+                sse = sse + e*e;
+                loo_sse = loo_sse + Math.pow(e/Math.max(1.0-h, 1e-9), 2);
+            }
+            double loo_error = Math.sqrt(loo_sse/n);
+            if(loo_error<looError) {
+                looError = loo_error;
+                trainingError = Math.sqrt(sse/n);
+                lambda = l;
+                weights = w;
+            }
+        }
+        intercept = mean_target;
+        trained = true;
+    }
+
+    private static double[][] cholesky(double[][] gram, double lambda) {
+        /**
+         * Returns the lower triangular factor L of gram + lambda*I = L*L^T
+         */
+        int d = gram.length;
+        double[][] l = new double[d][d];
+        for(int i=0; i<d; i++) {
+            for(int j=0; j<=i; j++) {
+                double sum = gram[i][j] + (i==j ? lambda : 0.0);
+                for(int k=0; k<j; k++)
+                    sum = sum - l[i][k]*l[j][k];
+                l[i][j] = i==j ? Math.sqrt(sum) : sum/l[j][j];
+            }
+        }
+        return l;
+    }
+
+    private static double[] solve(double[][] l, double[] b) {
+        /**
+         * Solves L*L^T x = b by forward and backward substitution
+         */
+        int d = b.length;
+        double[] t = new double[d];
+        for(int i=0; i<d; i++) {
+            double sum = b[i];
+            for(int k=0; k<i; k++)
+                sum = sum - l[i][k]*t[k];
+            t[i] = sum/l[i][i];
+        }
+        double[] x = new double[d];
+        for(int i=d-1; i>=0; i--) {
+            double sum = t[i];
+            for(int k=i+1; k<d; k++)
+                sum = sum - l[k][i]*x[k];
+            x[i] = sum/l[i][i];
+        }
+        return x;
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0.0;
+        for(int i=0; i<a.length; i++)
+            sum = sum + a[i]*b[i];
+        return sum;
+    }
+
+    public double predict(Configuration config) {
+        /**
+         * Returns the estimated objective achievement rate of the traces of configuration config (clamped to [0,1]),
+         * or -1 if there are not enough samples to train the model
+         */
+        if(!trained && targets.size()>=MIN_SAMPLES)
+            train();
+        if(!trained)
+            return -1;
+        double[] x = getFeatures(config);
+        double oa = intercept;
+        for(int j=0; j<x.length; j++)
+            if(scales[j]>0)
+                oa = oa + weights[j]*(x[j]-means[j])/scales[j];
+        return Math.min(1.0, Math.max(0.0, oa));
+    }
+
+    public LinkedHashMap<Configuration, Double> rank(Collection<Configuration> configs) {
+        /**
+         * Returns the configurations with their estimated objective achievement rate, sorted by decreasing estimate
+         * (configurations with the same estimate are kept in the given order)
+         */
+        ArrayList<Map.Entry<Configuration, Double>> predictions = new ArrayList<>();
+        for(Configuration c : configs)
+            predictions.add(new AbstractMap.SimpleEntry<>(c, predict(c)));
+        predictions.sort((lhs, rhs) -> Double.compare(rhs.getValue(), lhs.getValue()));
+        LinkedHashMap<Configuration, Double> ranking = new LinkedHashMap<>();
+        for(Map.Entry<Configuration, Double> p : predictions)
+            ranking.put(p.getKey(), p.getValue());
+        return ranking;
+    }
+
+    public LinkedHashMap<Configuration, Double> screen(Collection<Configuration> configs, int n) {
+        /**
+         * Returns the n configurations with the highest estimated objective achievement rate, i.e., the ones worth
+         * simulating, with their estimate
+         */
+        LinkedHashMap<Configuration, Double> screened = new LinkedHashMap<>();
+        for(Map.Entry<Configuration, Double> p : rank(configs).entrySet()) {
+            if(screened.size()>=n)
+                break;
+            screened.put(p.getKey(), p.getValue());
+        }
+        return screened;
+    }
+
+    public double getTrainingError() {
+        /**
+         * Root mean squared error of the model on its training samples (-1 if not trained)
+         */
+        return trainingError;
+    }
+
+    public double getPredictionError() {
+        /**
+         * Leave-one-out root mean squared error of the model, an estimate of its error on configurations not yet
+         * simulated (-1 if not trained)
+         */
+        return looError;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    @Override
+    public String toString() {
+        if(!trained)
+            return "surrogate not trained ("+targets.size()+" configurations)";
+        return "surrogate trained on "+targets.size()+" configurations (lambda "+lambda+", training RMSE "+trainingError+", leave-one-out RMSE "+looError+")";
+    }
+}
@@ -1,6 +1,6 @@
 package simulation;
 import java.util.*;
-public abstract class DNFNorm {
+public abstract class DNFNorm implements Cloneable {
 	/**
 	 * Class representing a norm whose components are expressed in DNF (represented as list of Disjuncts, i.e., a list of lists of conjuncts)
 	 * Each norm has three components:
@@ -323,12 +323,21 @@ public abstract class DNFNorm {
      */
     public void updateCondition(List<Conjunction> cond) {
     	this.cond = cond;
+    	componentsChanged();
     }
     public void updateProhibition(List<Conjunction> proh) {
     	this.proh = proh;
+    	componentsChanged();
     }
     public void updateDeadline(List<Conjunction> dead) {
     	this.dead = dead;
+    	componentsChanged();
+    }
+
+    /**
+     * Called when a component of the norm is replaced, e.g., to drop what the norm derived from its components
+     */
+    protected void componentsChanged() {
     }
     
     
@@ -346,8 +355,15 @@ public abstract class DNFNorm {
 		/**
 		 * Function to synthesise a number of formulas more specific than dnf_formula
 		 */
+		return getMoreSpecificFormulasFromProp(dnf_formula, getRelProp(set_states, component), component);
+	}
+
+	public Set<List<Conjunction>> getMoreSpecificFormulasFromProp(List<Conjunction> dnf_formula, Set<String> rel_prop, String component) {
+		/**
+		 * Function to synthesise a number of formulas more specific than dnf_formula, from the propositions rel_prop
+		 * already retrieved from the states
+		 */
 		Set<List<Conjunction>> msfs = new HashSet<>();
-		Set<String> rel_prop = getRelProp(set_states, component);
 		Set<Conjunction> C = buildConj(rel_prop, component, Constants.MORE_SPEC);
 		msfs.add(dnf_formula);
 		for (Conjunction c: C) {
@@ -367,8 +383,15 @@ public abstract class DNFNorm {
 		/**
 		 * Function to synthesise a number of formulas less specific than dnf_formula
 		 */
+		return getLessSpecificFormulasFromProp(dnf_formula, getRelProp(set_states, component), component);
+	}
+
+	public Set<List<Conjunction>> getLessSpecificFormulasFromProp(List<Conjunction> dnf_formula, Set<String> rel_prop, String component) {
+		/**
+		 * Function to synthesise a number of formulas less specific than dnf_formula, from the propositions rel_prop
+		 * already retrieved from the states
+		 */
 		Set<List<Conjunction>> lsfs = new HashSet<>();
-		Set<String> rel_prop = getRelProp(set_states, component);
 		Set<Conjunction> C = buildConj(rel_prop, component, Constants.LESS_SPEC);
 		lsfs.add(dnf_formula);
 		for (Conjunction c: C) {
@@ -460,11 +483,55 @@ public abstract class DNFNorm {
 	protected abstract Set<Conjunction> buildConjLessSpecDead(Set<String> prop);
 
 
+	/**
+	 * Function to get the maximum number of values (e.g., positions) used to build the conjunctions of a component
+	 * of the revisions of the norm, -1 if the norm does not bound them
+	 */
+	public int getSpaceParam(String component) {
+		return -1;
+	}
+
+	/**
+	 * Function to set the maximum number of values used to build the conjunctions of a component of the revisions of
+	 * the norm (ignored if the norm does not bound them)
+	 */
+	public void setSpaceParam(String component, int space_param) {
+	}
+
+	/**
+	 * Function to count the conjunctions that buildConj would build, e.g., to tune the space parameters of the norm
+	 * without building them. By default they are built and counted, norms that can count them directly override it
+	 */
+	public long countConj(Set<String> prop, String component, String formula_type) {
+		Set<Conjunction> conj = buildConj(prop, component, formula_type);
+		return conj==null ? 0 : conj.size();
+	}
+
+	/**
+	 * Function to get a copy of the norm sharing its components (which are never modified), e.g., to change the
+	 * space parameters of the copy without changing the norm
+	 */
+	public DNFNorm copy() {
+		try {
+			return (DNFNorm) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
 	/**
 	 * Function to determine whether the norm is equivalent to a disabled norm
 	 */
 	protected abstract boolean isDisabled();
 
+	/**
+	 * Function to determine, before creating a norm with the given components, whether the norm could be valid.
+	 * It is norm-specific, by default every combination of components is considered feasible
+	 */
+	public boolean isFeasible(List<Conjunction> cond, List<Conjunction> proh, List<Conjunction> dead) {
+		return true;
+	}
+
 	@Override
 	public String toString() {
 		if(this.isEmpty()) {
@@ -1,7 +1,5 @@
 package simulation;
 
-import com.google.common.collect.Sets;
-
 import java.util.*;
 
 public abstract class HighwayNorm extends DNFNorm{
@@ -23,6 +21,13 @@ public abstract class HighwayNorm extends DNFNorm{
     public static final int MIN_POS = 1;
     public static final int MAX_POS = 10;
 
+    /* bounds of the values used to build the conjunctions of each component (SPACE_PARAM unless set otherwise) */
+    private int condSpaceParam = SPACE_PARAM;
+    private int prohSpaceParam = SPACE_PARAM;
+    private int deadSpaceParam = SPACE_PARAM;
+    /* packed representation of the norm (see PackedHighwayNorm), parsed from the literals the first time it is needed */
+    private volatile long packedCode = PackedHighwayNorm.NOT_PACKED;
+
     public HighwayNorm(String id, Random r) {
         super(id, r);
     }
@@ -159,11 +164,238 @@ public abstract class HighwayNorm extends DNFNorm{
         return isInvalid;
     }
 
+    @Override
+    public boolean isFeasible(List<Conjunction> cond, List<Conjunction> proh, List<Conjunction> dead) {
+        /**
+         * Function to determine, without creating the norm, whether the norm with the given components would be
+         * discarded as disabled by the constructors of the highway norms.
+         * It performs the same checks of isDisabled, but directly on the components, i.e., taking the maximum position
+         * in the condition and in the deadline as the constructors do when they normalize the literals.
+         * Components are not modified. In the cases that cannot be decided here the combination is considered feasible
+         */
+        boolean conditionIsPossible = false;
+        for (Conjunction conjunction : cond) {
+            if(conjunction.getNumberOfLiteralsOfType(COND_APPL)<=1) {
+                conditionIsPossible = true;
+                break;
+            }
+        }
+        if(!conditionIsPossible)
+            return false;
+
+        boolean prohibitionIsPossible = false;
+        for (Conjunction conjunction : proh) {
+            if(conjunction.getNumberOfLiteralsOfType(PROH_APPL)<=1) {
+                prohibitionIsPossible = true;
+                break;
+            }
+        }
+        if(!prohibitionIsPossible)
+            return false;
+
+        boolean applCompatible = false;
+        for (Conjunction cond_d : cond) {
+            for (Conjunction proh_d : proh) {
+                int nr_cond_appl = cond_d.getNumberOfLiteralsOfType(COND_APPL);
+                int nr_proh_appl = proh_d.getNumberOfLiteralsOfType(PROH_APPL);
+                if(nr_cond_appl==nr_proh_appl &&
+                        (nr_cond_appl!=1 || cond_d.getLiteral(COND_APPL).equals(proh_d.getLiteral(PROH_APPL)))) {
+                    applCompatible = true;
+                    break;
+                }
+            }
+        }
+        if(!applCompatible)
+            return false;
+
+        for (Conjunction cond_d: cond) {
+            int cond_pos = getMaxPosition(cond_d, COND_POS);
+            for(Conjunction dead_d: dead) {
+                int dead_pos = getMaxPosition(dead_d, DEAD_POS);
+                if(cond_pos>Constants.BIGMNEGATIVE && dead_pos>Constants.BIGMNEGATIVE && cond_pos>=dead_pos)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    static int getMaxPosition(Conjunction d, String posType) {
+        /**
+         * Returns the maximum km among the position literals of type posType in d (the only one that matters in AND)
+         */
+        int max_pos = Constants.BIGMNEGATIVE;
+        for (String pos : d.getLiteralsListFromKeyType(posType))
+            max_pos = Math.max(max_pos, Integer.parseInt(pos.replace(Constants.KM, "")));
+        return max_pos;
+    }
+
     @Override
     public String toString() {
         return super.toString();
     }
 
+    long getPackedCode() {
+        long code = packedCode;
+        if(code==PackedHighwayNorm.NOT_PACKED) {
+            code = PackedHighwayNorm.parse(this);
+            packedCode = code;
+        }
+        return code;
+    }
+
+    void setPackedCode(long code) {
+        packedCode = code;
+    }
+
+    @Override
+    protected void componentsChanged() {
+        packedCode = PackedHighwayNorm.NOT_PACKED;
+    }
+
+    @Override
+    public int getSpaceParam(String component) {
+        switch (component) {
+            case Constants.CONDITION:
+                return condSpaceParam;
+            case Constants.PROHIBITION:
+                return prohSpaceParam;
+            case Constants.DEADLINE:
+                return deadSpaceParam;
+        }
+        return SPACE_PARAM;
+    }
+
+    @Override
+    public void setSpaceParam(String component, int space_param) {
+        switch (component) {
+            case Constants.CONDITION:
+                condSpaceParam = space_param;
+                break;
+            case Constants.PROHIBITION:
+                prohSpaceParam = space_param;
+                break;
+            case Constants.DEADLINE:
+                deadSpaceParam = space_param;
+                break;
+        }
+    }
+
+    @Override
+    public long countConj(Set<String> prop, String component, String formula_type) {
+        /**
+         * Counts the conjunctions of buildConj from the bounded propositions of every disjunct (see
+         * countConjFromProp). The disjuncts are counted separately, so the count is an upper bound if the same
+         * conjunction is built from more than one disjunct
+         */
+        long nr = 0;
+        switch (component) {
+            case Constants.CONDITION:
+                for (Conjunction d : this.cond) {
+                    if (formula_type.equals(Constants.MORE_SPEC))
+                        nr = addCount(nr, countConjFromProp(getBoundedPropMoreSpecCond(prop, d), Constants.KM, Integer.MAX_VALUE, d, null));
+                    else
+                        nr = addCount(nr, countConjFromProp(getBoundedPropLessSpecCond(prop, d), Constants.KM, Integer.MAX_VALUE, null, d.getLiteralsListFromKeyType(COND_APPL)));
+                }
+                return nr;
+            case Constants.PROHIBITION:
+                return formula_type.equals(Constants.MORE_SPEC) ? countConjMoreSpecProh(prop) : countConjLessSpecProh(prop);
+            case Constants.DEADLINE:
+                //one conjunction per position, the more specific deadlines being bounded by the space parameter
+                return formula_type.equals(Constants.MORE_SPEC) ? Math.min(prop.size(), getSpaceParam(Constants.DEADLINE)) : prop.size();
+        }
+        return super.countConj(prop, component, formula_type);
+    }
+
+    static long addCount(long lhs, long rhs) {
+        return lhs > Long.MAX_VALUE - rhs ? Long.MAX_VALUE : lhs + rhs;
+    }
+
+    protected abstract long countConjMoreSpecProh(Set<String> PS_prop);
+    protected abstract long countConjLessSpecProh(Set<String> IPS_prop);
+
+    protected void buildConjFromProp(Set<String> bounded_prop, String value_prefix, String value_type, int value_limit, String appl_type,
+                                     Conjunction base, List<String> allowed_appl, Set<Conjunction> builtConj) {
+        /**
+         * Function to build the conjunctions obtained from the subsets of bounded_prop (PHI), without enumerating its powerset.
+         * In the highway domain the values in a subset (positions, speeds or distances) are in AND, so a subset with
+         * several values collapses to the one that matters (e.g., km2 & km3 is km3): every non-empty subset of values
+         * collapses to one of the values, and each value is the result of some subset (itself).
+         * Therefore the distinct conjunctions are exactly the pairs (value, subset of the applicability propositions),
+         * which are enumerated here from the propositions parsed once, instead of the 2^|bounded_prop| subsets.
+         * Each conjunction contains the literals of base (if not null), the applicability literals and the value.
+         * If allowed_appl is not null, only the conjunctions without applicability literals or whose applicability
+         * literals are all in allowed_appl are built. Subsets without any value, and values not lower than value_limit
+         * (which the norms treat as no value), are ignored
+         */
+        ArrayList<String> values = new ArrayList<>();
+        ArrayList<String> appl = new ArrayList<>();
+        for (String str : bounded_prop) {
+            if (value_prefix.isEmpty() ? isNumber(str) : str.startsWith(value_prefix)) {
+                int value_int = Integer.parseInt(str.substring(value_prefix.length()));
+                String value = value_prefix + value_int;
+                if (value_int < value_limit && !values.contains(value))
+                    values.add(value);
+            }
+            else if (base == null || !base.getLiteralsMap().containsValue(str))
+                appl.add(str); //the appl already in base would not change the conjunction
+        }
+        if (values.isEmpty())
+            return;
+        for (int mask = 0; mask < (1 << appl.size()); mask++) {
+            ArrayList<String> mask_appl = new ArrayList<>();
+            for (int j = 0; j < appl.size(); j++)
+                if ((mask & (1 << j)) != 0)
+                    mask_appl.add(appl.get(j));
+            if (allowed_appl != null && !mask_appl.isEmpty() && !allowed_appl.containsAll(mask_appl))
+                continue;
+            for (String value : values) {
+                Conjunction new_conjunction = new Conjunction();
+                if (base != null)
+                    new_conjunction.addLiterals(base.getLiteralsMap());
+                for (String a : mask_appl)
+                    new_conjunction.addLiteral(appl_type, a);
+                new_conjunction.addLiteral(value_type, value);
+                builtConj.add(new_conjunction);
+            }
+        }
+    }
+
+    static long countConjFromProp(Set<String> bounded_prop, String value_prefix, int value_limit, Conjunction base, List<String> allowed_appl) {
+        /**
+         * Function to count the conjunctions that buildConjFromProp builds from bounded_prop, without building them:
+         * the distinct values times the subsets of the applicability propositions (only the ones in allowed_appl,
+         * if not null, as the other ones appear only in the subsets that are skipped)
+         */
+        Set<Integer> values = new HashSet<>();
+        int nr_appl = 0;
+        for (String str : bounded_prop) {
+            if (value_prefix.isEmpty() ? isNumber(str) : str.startsWith(value_prefix)) {
+                int value_int = Integer.parseInt(str.substring(value_prefix.length()));
+                if (value_int < value_limit)
+                    values.add(value_int);
+            }
+            else if ((base == null || !base.getLiteralsMap().containsValue(str)) && (allowed_appl == null || allowed_appl.contains(str)))
+                nr_appl++;
+        }
+        if (values.isEmpty())
+            return 0;
+        if (nr_appl >= Integer.SIZE)
+            return Long.MAX_VALUE;
+        return (long) values.size() << nr_appl;
+    }
+
+    static boolean isNumber(String str) {
+        /**
+         * Determines whether a proposition is a number (e.g., a speed) rather than a type of vehicle
+         */
+        if (str.isEmpty())
+            return false;
+        for (int i = 0; i < str.length(); i++)
+            if (!Character.isDigit(str.charAt(i)) && !(i == 0 && str.charAt(i) == '-' && str.length() > 1))
+                return false;
+        return true;
+    }
+
 
 
     public boolean appliesToType(String agentType) {
@@ -195,48 +427,33 @@ public abstract class HighwayNorm extends DNFNorm{
          * Function to build conjunctions from propositions in CS_prop to later construct more specific conditions
          */
         Set<Conjunction> builtConj = new HashSet<>();
-        for (Conjunction d: this.cond) {
+        for (Conjunction d: this.cond)
+            buildConjFromProp(getBoundedPropMoreSpecCond(CS_prop, d), Constants.KM, COND_POS, Integer.MAX_VALUE, COND_APPL, d, null, builtConj);
+        return builtConj;
+    }
+
+    Set<String> getBoundedPropMoreSpecCond(Set<String> CS_prop, Conjunction d) {
+        /**
+         * Function to bound the propositions in CS_prop used to build the more specific conditions of disjunct d: at
+         * most the space parameter of the condition positions (the lowest ones), together with the current one
+         */
 //			LinkedHashMap<String, String> cond_literals = d.getLiterals();
-            Set<String> bounded_CS_prop = new HashSet<>();
-            ArrayList<Integer> km = new ArrayList<>();
-            for(String s : CS_prop)
-                if(s.startsWith(Constants.KM)) {
-                    km.add(Integer.parseInt(s.replace(Constants.KM,"")));
-                }
-                else bounded_CS_prop.add(s);
-            if(km.size()> SPACE_PARAM) {
-                Collections.sort(km);
-                for(int i = 0; i< SPACE_PARAM; i++)
-                    bounded_CS_prop.add(Constants.KM+km.get(i));
-            } else
-                for (Integer integer : km) bounded_CS_prop.add(Constants.KM + integer);
-            if(bounded_CS_prop.size()>0)
-                bounded_CS_prop.add(d.getLiteral(COND_POS));
-
-            Set<Set<String>> power = Sets.powerSet(bounded_CS_prop);
-            for (Set<String> gen_s : power) {
-                Conjunction new_conjunction = new Conjunction(); //i create the new one identical to the current one
-                new_conjunction.addLiterals(d.getLiteralsMap());
-//				int i = new_literals.keySet().size(); //assuming there is always only one position, the remaining are the appl
-                int max_km = -1;
-                for(String str : gen_s)
-                    if(str.startsWith(Constants.KM))
-                        max_km = Math.max(max_km, Integer.parseInt(str.replace(Constants.KM, "")));
-                    else {
-                        //add the appl
-//						if(!new_literals.containsValue(str)) {
-//							new_literals.put(COND_APPL+""+i, str);
-//							i++;
-//						}
-                        new_conjunction.addLiteral(COND_APPL, str);
-                    }
-                if(max_km>-1) {
-                    new_conjunction.addLiteral(COND_POS, Constants.KM+max_km); //replace the current one with the new pos
-                    builtConj.add(new_conjunction);
-                }
+        Set<String> bounded_CS_prop = new HashSet<>();
+        ArrayList<Integer> km = new ArrayList<>();
+        for(String s : CS_prop)
+            if(s.startsWith(Constants.KM)) {
+                km.add(Integer.parseInt(s.replace(Constants.KM,"")));
             }
-        }
-        return builtConj;
+            else bounded_CS_prop.add(s);
+        if(km.size()> getSpaceParam(Constants.CONDITION)) {
+            Collections.sort(km);
+            for(int i = 0; i< getSpaceParam(Constants.CONDITION); i++)
+                bounded_CS_prop.add(Constants.KM+km.get(i));
+        } else
+            for (Integer integer : km) bounded_CS_prop.add(Constants.KM + integer);
+        if(bounded_CS_prop.size()>0)
+            bounded_CS_prop.add(d.getLiteral(COND_POS));
+        return bounded_CS_prop;
     }
 //
 //	/**
@@ -353,61 +570,37 @@ public Set<Conjunction> buildConjLessSpecDead(Set<String> CPS_prop) {
          * Function to build conjunctions from propositions in OPS_prop to later construct less specific conditions
          */
         Set<Conjunction> builtConj = new HashSet<>();
-        for (Conjunction d: this.cond) {
-//			LinkedHashMap<String, String> cond_literals = d.getLiterals(); //the current condition
-            Set<String> bounded_OPS_prop = new HashSet<>();
-            ArrayList<Integer> km = new ArrayList<>();
-            for (String s : OPS_prop)
-                if (s.startsWith(Constants.KM)) {
-                    km.add(Integer.parseInt(s.replace(Constants.KM, "")));
-                } else bounded_OPS_prop.add(s);
-
-            Collections.sort(km);
-            Collections.reverse(km);
-            int c = 0;
-            for (int i = 0; i < km.size() && c < SPACE_PARAM; i++) {
-                if (km.get(i) < Integer.parseInt(d.getLiteral(COND_POS).replace(Constants.KM, ""))) {
-                    bounded_OPS_prop.add(Constants.KM + km.get(i));
-                    c++;
-                }
-            }
-            if (bounded_OPS_prop.size() > 0)
-                bounded_OPS_prop.add(d.getLiteral(COND_POS));
-
-            Set<Set<String>> power = Sets.powerSet(bounded_OPS_prop); //this is PHI
+        for (Conjunction d: this.cond)
+            buildConjFromProp(getBoundedPropLessSpecCond(OPS_prop, d), Constants.KM, COND_POS, Integer.MAX_VALUE, COND_APPL, null, d.getLiteralsListFromKeyType(COND_APPL), builtConj); //only if it applies to the same vehicles as the original norm, or to all
+        return builtConj;
+    }
 
-            for (Set<String> gen_s : power) {
-                Conjunction new_conjunction = new Conjunction();
-//				int i = 1;
-                int max_km = -1;
-                for (String str : gen_s)
-                    if (str.startsWith(Constants.KM))
-                        max_km = Math.max(max_km, Integer.parseInt(str.replace(Constants.KM, "")));
-                    else {
-                        //add the appl
-//						if (!new_literals.containsValue(str)) {
-//							new_literals.put(COND_APPL + "" + i, str);
-//							i++;
-//						}
-                        new_conjunction.addLiteral(COND_APPL, str);
-                    }
-                if (max_km > -1) {
-//					LinkedHashMap<String, String> curr_literals = new LinkedHashMap<>(cond_literals);
-//					curr_literals.remove(COND_POS);
-//					if (new_literals.values().size() == 0 ||
-//							(curr_literals.values().containsAll(new_literals.values()))) {
-//						new_literals.put(COND_POS, "km" + max_km); //replace the current one with the new pos
-//						builtConj.add(new_literals);
-//					}
-                    if(new_conjunction.literals.size()==0 ||
-                            d.getLiteralsListFromKeyType(COND_APPL).containsAll(new_conjunction.getLiteralsListFromKeyType(COND_APPL))) { //or if it applies exactly to the same vehicles as the original norm
-                        new_conjunction.addLiteral(COND_POS, Constants.KM + max_km);
-                        builtConj.add(new_conjunction);
-                    }
-                }
+    Set<String> getBoundedPropLessSpecCond(Set<String> OPS_prop, Conjunction d) {
+        /**
+         * Function to bound the propositions in OPS_prop used to build the less specific conditions of disjunct d: at
+         * most the space parameter of the condition positions lower than the current one (the highest ones), together
+         * with the current one
+         */
+//			LinkedHashMap<String, String> cond_literals = d.getLiterals(); //the current condition
+        Set<String> bounded_OPS_prop = new HashSet<>();
+        ArrayList<Integer> km = new ArrayList<>();
+        for (String s : OPS_prop)
+            if (s.startsWith(Constants.KM)) {
+                km.add(Integer.parseInt(s.replace(Constants.KM, "")));
+            } else bounded_OPS_prop.add(s);
+
+        Collections.sort(km);
+        Collections.reverse(km);
+        int c = 0;
+        for (int i = 0; i < km.size() && c < getSpaceParam(Constants.CONDITION); i++) {
+            if (km.get(i) < Integer.parseInt(d.getLiteral(COND_POS).replace(Constants.KM, ""))) {
+                bounded_OPS_prop.add(Constants.KM + km.get(i));
+                c++;
             }
         }
-        return builtConj;
+        if (bounded_OPS_prop.size() > 0)
+            bounded_OPS_prop.add(d.getLiteral(COND_POS));
+        return bounded_OPS_prop;
     }
 //
 //    public Set<Conjunction> getLessSpecificConditions(List<Trace> obeyingTraces){
@@ -519,10 +712,10 @@ public Set<Conjunction> buildConjLessSpecDead(Set<String> CPS_prop) {
          */
         Set<Conjunction> builtConj = new HashSet<>();
         Set<String> bounded_DS_prop = new HashSet<>();
-        if(DS_prop.size()> SPACE_PARAM) {
+        if(DS_prop.size()> getSpaceParam(Constants.DEADLINE)) {
             ArrayList<String> km_str = new ArrayList<>(DS_prop);
             Collections.sort(km_str);
-            for(int i = 0; i< SPACE_PARAM; i++)
+            for(int i = 0; i< getSpaceParam(Constants.DEADLINE); i++)
                 bounded_DS_prop.add(km_str.get(i));
         } else bounded_DS_prop.addAll(DS_prop);
         for (String s : bounded_DS_prop) {
@@ -1,7 +1,6 @@
 package simulation;
 
 import java.util.*;
-import com.google.common.collect.Sets;
 
 
 public class MaxSpeedNorm extends HighwayNorm {
@@ -217,53 +216,42 @@ public class MaxSpeedNorm extends HighwayNorm {
 		 * Function to build conjunctions from propositions in PS_prop to later construct more specific prohibitions
 		 */
 		Set<Conjunction> builtConj = new HashSet<>();
-		for (Conjunction d: this.proh) {
-			Set<String> bounded_PS_prop = new HashSet<>();
-			ArrayList<Integer> sp = new ArrayList<>();
-			for(String s : PS_prop)
-				try {
-					int possible_speed = Integer.parseInt(s);
-					//if here it is actually the speed and not the type
-					sp.add(possible_speed);
-				} catch (NumberFormatException nfe) {
-					//here it means it was a type
-					bounded_PS_prop.add(s);
-				}
-			if(sp.size()> SPACE_PARAM) {
-				Collections.sort(sp);
-				for(int i = 0; i< SPACE_PARAM; i++)
-					bounded_PS_prop.add(sp.get(i)+"");
-			} else
-				for (Integer integer : sp) bounded_PS_prop.add(integer + "");
-			if(bounded_PS_prop.size()>0)
-				bounded_PS_prop.add(d.getLiteral(PROH_SPEED));
+		for (Conjunction d: this.proh)
+			buildConjFromProp(getBoundedPropMoreSpecProh(PS_prop, d), "", PROH_SPEED, Integer.MAX_VALUE, PROH_APPL, d, null, builtConj); //the current one with the new speed
+		return builtConj;
+	}
 
-			Set<Set<String>> power = Sets.powerSet(bounded_PS_prop);
+	@Override
+	protected long countConjMoreSpecProh(Set<String> PS_prop) {
+		long nr = 0;
+		for (Conjunction d: this.proh)
+			nr = addCount(nr, countConjFromProp(getBoundedPropMoreSpecProh(PS_prop, d), "", Integer.MAX_VALUE, d, null));
+		return nr;
+	}
 
-			for (Set<String> gen_s : power) {
-				Conjunction new_conjunction = new Conjunction();
-				new_conjunction.addLiterals(d.getLiteralsMap());//i create the new one identical to the current one
-				int max_sp = Constants.BIGMNEGATIVE;
-				for(String str : gen_s) {
-					try {
-						int possible_speed = Integer.parseInt(str);
-						//if here it is actually the speed and not the type
-						max_sp = Math.max(max_sp, possible_speed);
-					} catch (NumberFormatException nfe) {
-						//here it means it was an application type
-						new_conjunction.addLiteral(PROH_APPL, str);
-					}
-				}
-				if(max_sp>Constants.BIGMNEGATIVE) {
-					//I add also the speed
-					new_conjunction.addLiteral(PROH_SPEED, max_sp+""); //replace the current one with the new speed
-					//add the new proh
-					builtConj.add(new_conjunction);
-				}
-				// else I ignore this set, as I always want at least the speed literal
+	Set<String> getBoundedPropMoreSpecProh(Set<String> PS_prop, Conjunction d) {
+		/**
+		 * Function to bound the propositions in PS_prop used to build the more specific prohibitions of disjunct d
+		 */
+		Set<String> bounded_PS_prop = new HashSet<>();
+		ArrayList<Integer> sp = new ArrayList<>();
+		for(String s : PS_prop)
+			if(isNumber(s)) {
+				//if here it is actually the speed and not the type
+				sp.add(Integer.parseInt(s));
+			} else {
+				//here it means it was a type
+				bounded_PS_prop.add(s);
 			}
-		}
-		return builtConj;
+		if(sp.size()> getSpaceParam(Constants.PROHIBITION)) {
+			Collections.sort(sp);
+			for(int i = 0; i< getSpaceParam(Constants.PROHIBITION); i++)
+				bounded_PS_prop.add(sp.get(i)+"");
+		} else
+			for (Integer integer : sp) bounded_PS_prop.add(integer + "");
+		if(bounded_PS_prop.size()>0)
+			bounded_PS_prop.add(d.getLiteral(PROH_SPEED));
+		return bounded_PS_prop;
 	}
 
 	public Set<Conjunction> buildConjLessSpecProh(Set<String> IPS_prop) {
@@ -271,61 +259,47 @@ public class MaxSpeedNorm extends HighwayNorm {
 		 * Function to build conjunctions from propositions in IPS_prop to later construct less specific prohibitions
 		 */
 		Set<Conjunction> builtConj = new HashSet<>();
-		for (Conjunction d: this.proh) { //for every disjunct
-			Set<String> bounded_IPS_prop = new HashSet<>();
-			ArrayList<Integer> speeds = new ArrayList<>();
-			for (String str : IPS_prop) { //retrieve from the states the propositions. Collect for now the speeds and add them later
-				try {
-					int possible_speed = Integer.parseInt(str);
-					speeds.add(possible_speed);
-				} catch (NumberFormatException nfe) {
-					bounded_IPS_prop.add(str);
-				}
-			}
-			Collections.sort(speeds); //sort the speeds in ascending order
-			Collections.reverse(speeds); //reverse to obtain descending first (since we want to create less specific formula)
-			//I select the first SPACE_PARAM in the list that are lower than the current speed
-			//i want lower speeds since I want to create less specific formula
-			int c = 0;
-			for (int i = 0; i < speeds.size() && c < SPACE_PARAM; i++) {
-				int sp = speeds.get(i);
-				if (sp >= MIN_SPEED && sp < Integer.parseInt(d.getLiteral(PROH_SPEED))) {
-					bounded_IPS_prop.add(sp + "");
-					c++;
-				}
-			}
-			if (bounded_IPS_prop.size() > 0)
-				bounded_IPS_prop.add(d.getLiteral(PROH_SPEED));
+		//I combine all of the propositions (only the ones that apply to the same vehicles, or to all of them)
+		for (Conjunction d: this.proh)
+			buildConjFromProp(getBoundedPropLessSpecProh(IPS_prop, d), "", PROH_SPEED, Integer.MAX_VALUE, PROH_APPL, null, d.getLiteralsListFromKeyType(PROH_APPL), builtConj);
+		return builtConj;
+	}
 
-			//I create the powerset to combine all of the propositions
-			Set<Set<String>> power = Sets.powerSet(bounded_IPS_prop);
+	@Override
+	protected long countConjLessSpecProh(Set<String> IPS_prop) {
+		long nr = 0;
+		for (Conjunction d: this.proh)
+			nr = addCount(nr, countConjFromProp(getBoundedPropLessSpecProh(IPS_prop, d), "", Integer.MAX_VALUE, null, d.getLiteralsListFromKeyType(PROH_APPL)));
+		return nr;
+	}
 
-			//for every subset of propositions in the powerset
-			for (Set<String> gen_s : power) {
-				//I create a new conjunction
-				Conjunction new_conjunction = new Conjunction();
-				int max_sp = -1;
-				for (String str : gen_s) { //for every proposition in the set
-					try {
-						int possible_speed = Integer.parseInt(str);
-						max_sp = Math.max(max_sp, possible_speed);
-					} catch (NumberFormatException nfe) { //if it's not a speed is an applicability proposition (e.g., car or truck)
-						new_conjunction.addLiteral(PROH_APPL, str);
-					}
-				}
-				if (max_sp > -1) { //if the set contained a speed
-					if(new_conjunction.literals.size()==0 ||
-								d.getLiteralsListFromKeyType(PROH_APPL).containsAll(new_conjunction.getLiteralsListFromKeyType(PROH_APPL))) {
-						new_conjunction.addLiteral(PROH_SPEED, max_sp + "");
-						builtConj.add(new_conjunction);
-					}
-//					else {
-//						System.out.println("Discarding conjunction "+new_conjunction);
-//					}
-				}
+	Set<String> getBoundedPropLessSpecProh(Set<String> IPS_prop, Conjunction d) {
+		/**
+		 * Function to bound the propositions in IPS_prop used to build the less specific prohibitions of disjunct d
+		 */
+		Set<String> bounded_IPS_prop = new HashSet<>();
+		ArrayList<Integer> speeds = new ArrayList<>();
+		for (String str : IPS_prop) { //retrieve from the states the propositions. Collect for now the speeds and add them later
+			if (isNumber(str))
+				speeds.add(Integer.parseInt(str));
+			else
+				bounded_IPS_prop.add(str);
+		}
+		Collections.sort(speeds); //sort the speeds in ascending order
+		Collections.reverse(speeds); //reverse to obtain descending first (since we want to create less specific formula)
+		//I select the first SPACE_PARAM in the list that are lower than the current speed
+		//i want lower speeds since I want to create less specific formula
+		int c = 0;
+		for (int i = 0; i < speeds.size() && c < getSpaceParam(Constants.PROHIBITION); i++) {
+			int sp = speeds.get(i);
+			if (sp >= MIN_SPEED && sp < Integer.parseInt(d.getLiteral(PROH_SPEED))) {
+				bounded_IPS_prop.add(sp + "");
+				c++;
 			}
 		}
-		return builtConj;
+		if (bounded_IPS_prop.size() > 0)
+			bounded_IPS_prop.add(d.getLiteral(PROH_SPEED));
+		return bounded_IPS_prop;
 	}
 }
 
@@ -1,7 +1,6 @@
 package simulation;
 
 import java.util.*;
-import com.google.common.collect.Sets;
 
 
 public class MinDistNorm extends HighwayNorm {
@@ -201,50 +200,43 @@ public class MinDistNorm extends HighwayNorm {
 		 * Function to build conjunctions from propositions in PS_prop to later construct more specific prohibitions
 		 */
 		Set<Conjunction> builtConj = new HashSet<>();
-		for (Conjunction d: this.proh) {
-			Set<String> bounded_PS_prop = new HashSet<String>();
-			ArrayList<Integer> distances = new ArrayList<Integer>();
-			for(String s : PS_prop)
-				try {
-					int possible_speed = Integer.parseInt(s);
-					distances.add(possible_speed);
-				} catch (NumberFormatException nfe) {
-					bounded_PS_prop.add(s);
-				}
-			Collections.sort(distances);
-			Collections.reverse(distances);
-			int c = 0;
-			for(int i = 0; i<distances.size() && c< SPACE_PARAM; i++) {
-				int dist = distances.get(i);
-				if(dist>Integer.parseInt(d.getLiteral(PROH_DIST))) {
-					bounded_PS_prop.add(dist+"");
-					c++;
-				}
-			}
-			if(bounded_PS_prop.size()>0)
-				bounded_PS_prop.add(d.getLiteral(PROH_DIST));
+		for (Conjunction d: this.proh)
+			buildConjFromProp(getBoundedPropMoreSpecProh(PS_prop, d), "", PROH_DIST, Constants.BIGMPOSITIVE, PROH_APPL, d, null, builtConj);
+		return builtConj;
+	}
 
-			Set<Set<String>> power = Sets.powerSet(bounded_PS_prop); //this is PHI
+	@Override
+	protected long countConjMoreSpecProh(Set<String> PS_prop) {
+		long nr = 0;
+		for (Conjunction d: this.proh)
+			nr = addCount(nr, countConjFromProp(getBoundedPropMoreSpecProh(PS_prop, d), "", Constants.BIGMPOSITIVE, d, null));
+		return nr;
+	}
 
-			for (Set<String> gen_s : power) {
-				Conjunction new_conjunction = new Conjunction();
-				new_conjunction.addLiterals(d.getLiteralsMap());
-				int min_dist = Constants.BIGMPOSITIVE;
-				for(String str : gen_s) {
-					try {
-						int possible_dist = Integer.parseInt(str);
-						min_dist = Math.min(min_dist, possible_dist);
-					} catch (NumberFormatException nfe) {
-						new_conjunction.addLiteral(PROH_APPL, str);
-					}
-				}
-				if(min_dist<Constants.BIGMPOSITIVE) {
-					new_conjunction.addLiteral(PROH_DIST, min_dist+"");
-					builtConj.add(new_conjunction);
-				}
+	Set<String> getBoundedPropMoreSpecProh(Set<String> PS_prop, Conjunction d) {
+		/**
+		 * Function to bound the propositions in PS_prop used to build the more specific prohibitions of disjunct d
+		 */
+		Set<String> bounded_PS_prop = new HashSet<String>();
+		ArrayList<Integer> distances = new ArrayList<Integer>();
+		for(String s : PS_prop)
+			if(isNumber(s))
+				distances.add(Integer.parseInt(s));
+			else
+				bounded_PS_prop.add(s);
+		Collections.sort(distances);
+		Collections.reverse(distances);
+		int c = 0;
+		for(int i = 0; i<distances.size() && c< getSpaceParam(Constants.PROHIBITION); i++) {
+			int dist = distances.get(i);
+			if(dist>Integer.parseInt(d.getLiteral(PROH_DIST))) {
+				bounded_PS_prop.add(dist+"");
+				c++;
 			}
 		}
-		return builtConj;
+		if(bounded_PS_prop.size()>0)
+			bounded_PS_prop.add(d.getLiteral(PROH_DIST));
+		return bounded_PS_prop;
 	}
 
 	public Set<Conjunction> buildConjLessSpecProh(Set<String> IPS_prop) {
@@ -252,58 +244,46 @@ public class MinDistNorm extends HighwayNorm {
 		 * Function to build conjunctions from propositions in IPS_prop to later construct less specific prohibitions
 		 */
 		Set<Conjunction> builtConj = new HashSet<>();
-		for (Conjunction d: this.proh) {
-//			LinkedHashMap<String, String> proh_literals = d.getLiterals(); //the current prohibition
-			Set<String> bounded_IPS_prop = new HashSet<String>();
-			ArrayList<Integer> dist = new ArrayList<Integer>();
-			for (String str : IPS_prop) {
-				try {
-					int possible_dist = Integer.parseInt(str);
-					if (possible_dist <= MAX_DIST)
-						dist.add(possible_dist);
-					else
-						dist.add(MAX_DIST);
-				} catch (NumberFormatException nfe) {
-					bounded_IPS_prop.add(str);
-				}
-			}
-			if (dist.size() > SPACE_PARAM) {
-				Collections.sort(dist);
-				for (int i = 0; i < SPACE_PARAM; i++)
-					bounded_IPS_prop.add(dist.get(i) + "");
-			} else
-				for (int i = 0; i < dist.size(); i++)
-					bounded_IPS_prop.add(dist.get(i) + "");
-			if (bounded_IPS_prop.size() > 0)
-				bounded_IPS_prop.add(d.getLiteral(PROH_DIST));
+		for (Conjunction d: this.proh)
+			buildConjFromProp(getBoundedPropLessSpecProh(IPS_prop, d), "", PROH_DIST, MAX_DIST + 1000, PROH_APPL, null, d.getLiteralsListFromKeyType(PROH_APPL), builtConj);
+		return builtConj;
+	}
 
-			Set<Set<String>> power = Sets.powerSet(bounded_IPS_prop);
+	@Override
+	protected long countConjLessSpecProh(Set<String> IPS_prop) {
+		long nr = 0;
+		for (Conjunction d: this.proh)
+			nr = addCount(nr, countConjFromProp(getBoundedPropLessSpecProh(IPS_prop, d), "", MAX_DIST + 1000, null, d.getLiteralsListFromKeyType(PROH_APPL)));
+		return nr;
+	}
 
-			for (Set<String> gen_s : power) {
-				Conjunction new_conjunction = new Conjunction();
-				int BIG_M = MAX_DIST + 1000;
-				int min_dist = BIG_M;
-				for (String str : gen_s) {
-					try {
-						int possible_dist = Integer.parseInt(str);
-						min_dist = Math.min(min_dist, possible_dist);
-					} catch (NumberFormatException nfe) {
-						new_conjunction.addLiteral(PROH_APPL, str);
-					}
-				}
-				if (min_dist < BIG_M) {
-					if(new_conjunction.literals.size()==0 ||
-							d.getLiteralsListFromKeyType(PROH_APPL).containsAll(new_conjunction.getLiteralsListFromKeyType(PROH_APPL))) {
-						new_conjunction.addLiteral(PROH_DIST, min_dist + "");
-						builtConj.add(new_conjunction);
-					}
-//					else {
-//						System.out.println("Discarding conjunction "+new_conjunction);
-//					}
-				}
-			}
+	Set<String> getBoundedPropLessSpecProh(Set<String> IPS_prop, Conjunction d) {
+		/**
+		 * Function to bound the propositions in IPS_prop used to build the less specific prohibitions of disjunct d
+		 */
+//			LinkedHashMap<String, String> proh_literals = d.getLiterals(); //the current prohibition
+		Set<String> bounded_IPS_prop = new HashSet<String>();
+		ArrayList<Integer> dist = new ArrayList<Integer>();
+		for (String str : IPS_prop) {
+			if (isNumber(str)) {
+				int possible_dist = Integer.parseInt(str);
+				if (possible_dist <= MAX_DIST)
+					dist.add(possible_dist);
+				else
+					dist.add(MAX_DIST);
+			} else
+				bounded_IPS_prop.add(str);
 		}
-		return builtConj;
+		if (dist.size() > getSpaceParam(Constants.PROHIBITION)) {
+			Collections.sort(dist);
+			for (int i = 0; i < getSpaceParam(Constants.PROHIBITION); i++)
+				bounded_IPS_prop.add(dist.get(i) + "");
+		} else
+			for (int i = 0; i < dist.size(); i++)
+				bounded_IPS_prop.add(dist.get(i) + "");
+		if (bounded_IPS_prop.size() > 0)
+			bounded_IPS_prop.add(d.getLiteral(PROH_DIST));
+		return bounded_IPS_prop;
 	}
 
 }
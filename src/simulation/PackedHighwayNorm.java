@@ -0,0 +1,306 @@
+package simulation;
+
+import java.util.*;
+
+public class PackedHighwayNorm {
+    /**
+     * Class implementing a packed representation of the highway norms (MaxSpeedNorm and MinDistNorm) made of a single
+     * disjunct per component, like the ones created randomly and most of the synthesised ones.
+     * Such a norm is fully described by a few small numbers, which are packed in a long (from the most significant bits):
+     * kind of norm (1 bit, 0 for MaxSpeedNorm and 1 for MinDistNorm), condition km (4 bits),
+     * condition applicability (2 bits), prohibition applicability (2 bits), speed or distance (32 bits), deadline km (4 bits).
+     * An applicability is a mask where the bit 1 stands for car and the bit 2 for truck (0 means that the component applies
+     * to all vehicles, 3 that it requires both, i.e., it never holds).
+     * Packed norms can be evaluated, compared and ordered without creating DNFNorm objects and without parsing literals,
+     * and sets of candidate norms can be kept as sorted long[] and unpacked only when the norms are needed.
+     * The packed representation of a norm is computed once and kept by the norm (see HighwayNorm.getPackedCode).
+     * Norms that cannot be packed are encoded as NOT_PACKABLE
+     */
+    public static final long NOT_PACKABLE = -1;
+    static final long NOT_PACKED = -2; //the norm has not been packed yet
+
+    public static final int KIND_MAX_SPEED = 0;
+    public static final int KIND_MIN_DIST = 1;
+    public static final int APPL_ALL = 0;
+    public static final int APPL_CAR = 1;
+    public static final int APPL_TRUCK = 2;
+
+    static final int DEAD_SHIFT = 0;
+    static final int VALUE_SHIFT = 4;
+    static final int PROH_APPL_SHIFT = 36;
+    static final int COND_APPL_SHIFT = 38;
+    static final int COND_SHIFT = 40;
+    static final int KIND_SHIFT = 44;
+    static final long POS_MASK = 0xFL;
+    static final long APPL_MASK = 0x3L;
+    static final long VALUE_MASK = 0xFFFFFFFFL;
+
+    public static long pack(int kind, int cond_pos, int cond_appl, int proh_appl, long value, int dead_pos) {
+        if(cond_pos<0 || cond_pos>POS_MASK || dead_pos<0 || dead_pos>POS_MASK || value<0 || value>VALUE_MASK)
+            return NOT_PACKABLE;
+        return ((long) kind << KIND_SHIFT) | ((long) cond_pos << COND_SHIFT) | ((long) cond_appl << COND_APPL_SHIFT) |
+                ((long) proh_appl << PROH_APPL_SHIFT) | (value << VALUE_SHIFT) | ((long) dead_pos << DEAD_SHIFT);
+    }
+
+    public static long pack(DNFNorm n) {
+        /**
+         * Returns the packed representation of norm n, or NOT_PACKABLE if n is not a highway norm with a single disjunct
+         * per component containing only one position (or speed, or distance) and applicability literals.
+         * The literals of a norm are parsed only the first time it is packed
+         */
+        if(!(n instanceof HighwayNorm))
+            return NOT_PACKABLE;
+        return ((HighwayNorm) n).getPackedCode();
+    }
+
+    static long parse(DNFNorm n) {
+        int kind;
+        String value_type;
+        if(n instanceof MaxSpeedNorm) {
+            kind = KIND_MAX_SPEED;
+            value_type = HighwayNorm.PROH_SPEED;
+        } else if(n instanceof MinDistNorm) {
+            kind = KIND_MIN_DIST;
+            value_type = HighwayNorm.PROH_DIST;
+        } else
+            return NOT_PACKABLE;
+        if(n.isEmpty() || n.getCondition().size()!=1 || n.getProhibition().size()!=1 || n.getDeadline().size()!=1)
+            return NOT_PACKABLE;
+        Conjunction cond = n.getCondition().get(0);
+        Conjunction proh = n.getProhibition().get(0);
+        Conjunction dead = n.getDeadline().get(0);
+
+        int cond_pos = getPosition(cond, HighwayNorm.COND_POS);
+        int cond_appl = getApplMask(cond, HighwayNorm.COND_APPL);
+        long value = getValue(proh, value_type);
+        int proh_appl = getApplMask(proh, HighwayNorm.PROH_APPL);
+        int dead_pos = getPosition(dead, HighwayNorm.DEAD_POS);
+        if(cond_pos<0 || cond_appl<0 || value<0 || proh_appl<0 || dead_pos<0)
+            return NOT_PACKABLE;
+        //every literal of the disjuncts must have been encoded
+        if(cond.getLiteralsMap().size()!=1+Integer.bitCount(cond_appl) ||
+                proh.getLiteralsMap().size()!=1+Integer.bitCount(proh_appl) ||
+                dead.getLiteralsMap().size()!=1)
+            return NOT_PACKABLE;
+        return pack(kind, cond_pos, cond_appl, proh_appl, value, dead_pos);
+    }
+
+    private static int getPosition(Conjunction d, String pos_type) {
+        if(d.getNumberOfLiteralsOfType(pos_type)!=1 || !d.containsKey(pos_type+"1"))
+            return -1;
+        String pos = d.getLiteral(pos_type+"1");
+        if(!pos.startsWith(Constants.KM) || !HighwayNorm.isNumber(pos.substring(Constants.KM.length())))
+            return -1;
+        return Integer.parseInt(pos.substring(Constants.KM.length()));
+    }
+
+    private static long getValue(Conjunction d, String value_type) {
+        if(d.getNumberOfLiteralsOfType(value_type)!=1 || !d.containsKey(value_type+"1"))
+            return -1;
+        String value = d.getLiteral(value_type+"1");
+        if(!HighwayNorm.isNumber(value) || value.length()>10)
+            return -1;
+        return Long.parseLong(value);
+    }
+
+    private static int getApplMask(Conjunction d, String appl_type) {
+        int mask = 0;
+        for(String appl : d.getLiteralsListFromKeyType(appl_type)) {
+            int bit = getTypeMask(appl);
+            if(bit==0)
+                return -1;
+            mask |= bit;
+        }
+        if(Integer.bitCount(mask)!=d.getNumberOfLiteralsOfType(appl_type))
+            return -1;
+        return mask;
+    }
+
+    public static int getTypeMask(String veh_type) {
+        /**
+         * Returns the applicability bit of a type of vehicle (0 if unknown)
+         */
+        if(Constants.CAR.equals(veh_type))
+            return APPL_CAR;
+        if(Constants.TRUCK.equals(veh_type))
+            return APPL_TRUCK;
+        return 0;
+    }
+
+    public static long[] packAll(Collection<? extends DNFNorm> norms) {
+        /**
+         * Returns the sorted set (without duplicates) of the packed representations of the packable norms in norms
+         */
+        long[] codes = new long[norms.size()];
+        int size = 0;
+        for(DNFNorm n : norms) {
+            long code = pack(n);
+            if(code!=NOT_PACKABLE)
+                codes[size++] = code;
+        }
+        Arrays.sort(codes, 0, size);
+        int unique = 0;
+        for(int i=0; i<size; i++)
+            if(unique==0 || codes[i]!=codes[unique-1])
+                codes[unique++] = codes[i];
+        return Arrays.copyOf(codes, unique);
+    }
+
+    public static HighwayNorm unpack(long code, String id, Random r) {
+        /**
+         * Creates the full norm (with the given id) described by the packed representation code
+         */
+        Conjunction cond = new Conjunction();
+        addApplLiterals(cond, HighwayNorm.COND_APPL, getCondAppl(code));
+        cond.addLiteral(HighwayNorm.COND_POS, Constants.KM+getCondPos(code));
+        Conjunction proh = new Conjunction();
+        addApplLiterals(proh, HighwayNorm.PROH_APPL, getProhAppl(code));
+        Conjunction dead = new Conjunction();
+        dead.addLiteral(HighwayNorm.DEAD_POS, Constants.KM+getDeadPos(code));
+        List<Conjunction> cond_l = new ArrayList<>(List.of(cond));
+        List<Conjunction> proh_l = new ArrayList<>(List.of(proh));
+        List<Conjunction> dead_l = new ArrayList<>(List.of(dead));
+        HighwayNorm n;
+        if(getKind(code)==KIND_MAX_SPEED) {
+            proh.addLiteral(HighwayNorm.PROH_SPEED, ""+getValue(code));
+            n = new MaxSpeedNorm(id, cond_l, proh_l, dead_l, r);
+        } else {
+            proh.addLiteral(HighwayNorm.PROH_DIST, ""+getValue(code));
+            n = new MinDistNorm(id, cond_l, proh_l, dead_l, r);
+        }
+        n.setPackedCode(code);
+        return n;
+    }
+
+    private static void addApplLiterals(Conjunction d, String appl_type, int mask) {
+        if((mask & APPL_CAR)!=0)
+            d.addLiteral(appl_type, Constants.CAR);
+        if((mask & APPL_TRUCK)!=0)
+            d.addLiteral(appl_type, Constants.TRUCK);
+    }
+
+    public static int getKind(long code) {
+        return (int) ((code >>> KIND_SHIFT) & 1L);
+    }
+
+    public static int getCondPos(long code) {
+        return (int) ((code >>> COND_SHIFT) & POS_MASK);
+    }
+
+    public static int getCondAppl(long code) {
+        return (int) ((code >>> COND_APPL_SHIFT) & APPL_MASK);
+    }
+
+    public static int getProhAppl(long code) {
+        return (int) ((code >>> PROH_APPL_SHIFT) & APPL_MASK);
+    }
+
+    public static long getValue(long code) {
+        return (code >>> VALUE_SHIFT) & VALUE_MASK;
+    }
+
+    public static int getDeadPos(long code) {
+        return (int) ((code >>> DEAD_SHIFT) & POS_MASK);
+    }
+
+    public static int compare(long code1, long code2) {
+        /**
+         * Total order of the packed norms (by kind, condition km, applicabilities, speed or distance, deadline km)
+         */
+        return Long.compare(code1, code2);
+    }
+
+    public static boolean isDisabled(long code) {
+        /**
+         * Same as HighwayNorm.isDisabled, for a packed norm: the condition or the prohibition require both types of
+         * vehicles, they apply to different vehicles, or the condition is not before the deadline
+         */
+        int cond_appl = getCondAppl(code);
+        int proh_appl = getProhAppl(code);
+        if(cond_appl==3 || proh_appl==3 || cond_appl!=proh_appl)
+            return true;
+        return getCondPos(code)>=getDeadPos(code);
+    }
+
+    public static boolean isSatCondition(long code, int pos, int type_mask) {
+        int cond_appl = getCondAppl(code);
+        return pos>=getCondPos(code) && (cond_appl==APPL_ALL || cond_appl==type_mask);
+    }
+
+    public static boolean isSatProhibition(long code, double speed, double dist) {
+        //as in the norms, the prohibition is satisfied regardless of its applicability
+        if(getKind(code)==KIND_MAX_SPEED)
+            return speed>=getValue(code);
+        return dist<=getValue(code);
+    }
+
+    public static boolean isSatDeadline(long code, int pos) {
+        return pos>=getDeadPos(code);
+    }
+
+    public static int isViol(long code, int[] positions, double[] speeds, double[] dists, int[] types) {
+        /**
+         * Same as DNFNorm.isViol, for a packed norm and a trace given by the positions (km), speeds, distances and
+         * types (applicability bits) of its states
+         */
+        if(isDisabled(code))
+            return -1;
+        boolean detached = false;
+        for(int i=0; i<positions.length; i++) {
+            if(isSatCondition(code, positions[i], types[i]))
+                detached = true;
+            if(detached) {
+                boolean isSatDead = isSatDeadline(code, positions[i]);
+                if(isSatProhibition(code, speeds[i], dists[i]) && !isSatDead)
+                    return i;
+                if(isSatDead)
+                    detached = false;
+            }
+        }
+        return -1;
+    }
+
+    public static int isViol(long code, Trace trace) {
+        int n = trace.getLength();
+        int[] positions = new int[n];
+        double[] speeds = new double[n];
+        double[] dists = new double[n];
+        int[] types = new int[n];
+        for(int i=0; i<n; i++) {
+            State s = trace.getStates().get(i);
+            positions[i] = Integer.parseInt(s.position.replace(Constants.KM, ""));
+            speeds[i] = s.speed;
+            dists[i] = s.dist;
+            types[i] = getTypeMask(s.type);
+        }
+        return isViol(code, positions, speeds, dists, types);
+    }
+
+    public static boolean isAtLeastAsSpecific(long code1, long code2, String component) {
+        /**
+         * Determines whether the component (cond, proh or dead) of the packed norm code1 is at least as specific as the
+         * one of code2, i.e., whether it holds only in states where also the one of code2 holds.
+         * Both norms must be of the same kind
+         */
+        switch (component) {
+            case Constants.CONDITION:
+                int appl1 = getCondAppl(code1);
+                int appl2 = getCondAppl(code2);
+                return appl1==3 || (getCondPos(code1)>=getCondPos(code2) && (appl2==APPL_ALL || appl1==appl2));
+            case Constants.PROHIBITION:
+                if(getKind(code1)==KIND_MAX_SPEED)
+                    return getValue(code1)>=getValue(code2);
+                return getValue(code1)<=getValue(code2);
+            case Constants.DEADLINE:
+                return getDeadPos(code1)>=getDeadPos(code2);
+        }
+        return false;
+    }
+
+    public static String toString(long code) {
+        if(code==NOT_PACKABLE)
+            return "(not packable)";
+        return (getKind(code)==KIND_MAX_SPEED?"MSN":"MDN")+"[km"+getCondPos(code)+"/"+getCondAppl(code)+", "+
+                getValue(code)+"/"+getProhAppl(code)+", km"+getDeadPos(code)+"]";
+    }
+}